@@ -0,0 +1,328 @@
+import arbitraryarithmetic.AFloat;
+import arbitraryarithmetic.AInteger;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.Supplier;
+
+// Benchmarks for every AInteger / AFloat operation, each one next to the same operation on
+// java.math.BigInteger / BigDecimal so the numbers can be compared within one run.
+//
+//   ant bench                                   (everything, takes a while)
+//   ant bench -Dbench.args="--sizes 1000,1000000 --ops multiply,divide --out results.json"
+//
+// Options:
+//   --sizes a,b,...      operand sizes in decimal digits (default 1,10,100,1000,10000,100000,1000000)
+//   --ops x,y,...        only these operations: int.multiply, multiply (int and float), int (all int ones), ...
+//   --warmup n           warmup iterations per benchmark (default 3)
+//   --iterations n       measured iterations per benchmark (default 5)
+//   --time ms            length of one iteration (default 500)
+//   --out file           write the results as JSON to file (default: stdout gets a table only)
+//   --csv file           same as CSV
+//
+// Every iteration runs the operation in a loop until the time is up and reports the average
+// time per operation; score is the mean over the iterations and error the 99.9% half width,
+// like JMH's average time mode. The JSON file uses JMH's result layout (benchmark, mode, params,
+// primaryMetric with score / scoreError / rawData), so tools that read JMH results read it too.
+public class ArithmeticBenchmark {
+    private static final String[] OPERATIONS = {
+            "int.parse", "int.toString", "int.add", "int.subtract", "int.multiply", "int.divide",
+            "float.parse", "float.toString", "float.add", "float.addAligned", "float.subtract",
+            "float.multiply", "float.divide" };
+
+    // results are hashed into here so the JIT can't drop the work
+    static volatile int sink;
+
+    private static final class Result {
+        final String benchmark;
+        final int digits;
+        final double[] samples; // ns per operation, one per iteration
+
+        Result(String benchmark, int digits, double[] samples) {
+            this.benchmark = benchmark;
+            this.digits = digits;
+            this.samples = samples;
+        }
+
+        double score() {
+            double sum = 0;
+            for (double s : samples)
+                sum += s;
+            return sum / samples.length;
+        }
+
+        // half width of the 99.9% confidence interval (normal approximation)
+        double error() {
+            if (samples.length < 2)
+                return Double.NaN;
+            double mean = score(), var = 0;
+            for (double s : samples)
+                var += (s - mean) * (s - mean);
+            return 3.29 * Math.sqrt(var / (samples.length - 1)) / Math.sqrt(samples.length);
+        }
+    }
+
+    private static int warmup = 3;
+    private static int iterations = 5;
+    private static long iterationNanos = 500_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = { 1, 10, 100, 1_000, 10_000, 100_000, 1_000_000 };
+        Set<String> ops = new LinkedHashSet<>(Arrays.asList(OPERATIONS));
+        String jsonFile = null, csvFile = null;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length)
+                    throw new IllegalArgumentException("Missing value for " + arg);
+                String v = args[++i];
+                switch (arg) {
+                    case "--sizes":
+                        sizes = Arrays.stream(v.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                        break;
+                    case "--ops":
+                        ops = selectOperations(v);
+                        break;
+                    case "--warmup":
+                        warmup = Integer.parseInt(v);
+                        break;
+                    case "--iterations":
+                        iterations = Integer.parseInt(v);
+                        break;
+                    case "--time":
+                        iterationNanos = Long.parseLong(v) * 1_000_000L;
+                        break;
+                    case "--out":
+                        jsonFile = v;
+                        break;
+                    case "--csv":
+                        csvFile = v;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + arg);
+                }
+            }
+            if (iterations < 1 || warmup < 0 || iterationNanos <= 0)
+                throw new IllegalArgumentException("Bad iteration settings");
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-34s %10s %16s %14s%n", "Benchmark", "digits", "score (ns/op)", "error");
+        for (int digits : sizes) {
+            if (digits < 1) {
+                System.out.println("Skipping size " + digits);
+                continue;
+            }
+            Operands o = new Operands(digits, new Random(digits));
+            for (String op : ops) {
+                for (boolean baseline : new boolean[] { false, true }) {
+                    Result r = run(op, baseline, o);
+                    results.add(r);
+                    System.out.printf("%-34s %10d %16.1f %14.1f%n", r.benchmark, digits, r.score(), r.error());
+                }
+            }
+        }
+
+        if (jsonFile != null)
+            Files.write(Paths.get(jsonFile), toJson(results).getBytes(StandardCharsets.UTF_8));
+        if (csvFile != null)
+            Files.write(Paths.get(csvFile), toCsv(results).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Set<String> selectOperations(String list) {
+        Set<String> selected = new LinkedHashSet<>();
+        for (String name : list.split(",")) {
+            String n = name.trim();
+            boolean found = false;
+            for (String op : OPERATIONS) {
+                // "int.multiply", "multiply" (int and float) or "int" (every int operation)
+                String type = op.substring(0, op.indexOf('.')), operation = op.substring(op.indexOf('.') + 1);
+                if (op.equalsIgnoreCase(n) || operation.equalsIgnoreCase(n) || type.equalsIgnoreCase(n)) {
+                    selected.add(op);
+                    found = true;
+                }
+            }
+            if (!found)
+                throw new IllegalArgumentException("Unknown operation " + n + ", known: " + String.join(", ", OPERATIONS));
+        }
+        return selected;
+    }
+
+    // operands of one size, generated once (seeded, so every run measures the same numbers)
+    private static final class Operands {
+        final String intText, floatText;
+        final AInteger a, b, half; // half: digits / 2 digits, the divisor
+        final BigInteger ba, bb, bhalf;
+        final AFloat fa, fb, fc; // fb has a different scale than fa, fc the same
+        final BigDecimal da, db, dc;
+
+        Operands(int digits, Random r) {
+            intText = randomDigits(digits, r);
+            String other = randomDigits(digits, r);
+            String divisor = randomDigits(Math.max(1, digits / 2), r);
+            a = new AInteger(intText);
+            b = new AInteger(other);
+            half = new AInteger(divisor);
+            ba = new BigInteger(intText);
+            bb = new BigInteger(other);
+            bhalf = new BigInteger(divisor);
+
+            // fa: half the digits after the point, fb: a quarter, fc: same layout as fa
+            floatText = withPoint(intText, digits / 2);
+            String fbText = withPoint(other, digits / 4);
+            String fcText = withPoint(randomDigits(digits, r), digits / 2);
+            fa = new AFloat(floatText);
+            fb = new AFloat(fbText);
+            fc = new AFloat(fcText);
+            da = new BigDecimal(floatText);
+            db = new BigDecimal(fbText);
+            dc = new BigDecimal(fcText);
+        }
+
+        private static String randomDigits(int n, Random r) {
+            char[] c = new char[n];
+            c[0] = (char) ('1' + r.nextInt(9));
+            for (int i = 1; i < n; i++)
+                c[i] = (char) ('0' + r.nextInt(10));
+            c[n - 1] = (char) ('1' + r.nextInt(9)); // no trailing zero, so AFloat keeps the layout
+            return new String(c);
+        }
+
+        private static String withPoint(String digits, int fraction) {
+            if (fraction == 0)
+                return digits;
+            int point = digits.length() - fraction;
+            return digits.substring(0, point) + "." + digits.substring(point);
+        }
+    }
+
+    private static Result run(String op, boolean baseline, Operands o) {
+        Supplier<Object> task;
+        switch (op) {
+            case "int.parse":
+                task = baseline ? () -> new BigInteger(o.intText) : () -> new AInteger(o.intText);
+                break;
+            case "int.toString":
+                task = baseline ? o.ba::toString : o.a::toString;
+                break;
+            case "int.add":
+                task = baseline ? () -> o.ba.add(o.bb) : () -> o.a.add(o.b);
+                break;
+            case "int.subtract":
+                task = baseline ? () -> o.ba.subtract(o.bb) : () -> o.a.subtract(o.b);
+                break;
+            case "int.multiply":
+                task = baseline ? () -> o.ba.multiply(o.bb) : () -> o.a.multiply(o.b);
+                break;
+            case "int.divide":
+                task = baseline ? () -> o.ba.divide(o.bhalf) : () -> o.a.divide(o.half);
+                break;
+            case "float.parse":
+                task = baseline ? () -> new BigDecimal(o.floatText) : () -> new AFloat(o.floatText);
+                break;
+            case "float.toString":
+                // AFloat prints 30 fractional digits, BigDecimal all of them
+                task = baseline ? o.da::toPlainString : o.fa::toString;
+                break;
+            case "float.add":
+                task = baseline ? () -> o.da.add(o.db) : () -> o.fa.add(o.fb);
+                break;
+            case "float.addAligned":
+                task = baseline ? () -> o.da.add(o.dc) : () -> o.fa.add(o.fc);
+                break;
+            case "float.subtract":
+                task = baseline ? () -> o.da.subtract(o.db) : () -> o.fa.subtract(o.fb);
+                break;
+            case "float.multiply":
+                task = baseline ? () -> o.da.multiply(o.db) : () -> o.fa.multiply(o.fb);
+                break;
+            case "float.divide":
+                // same rule as AFloat.divide: the dividend's fraction digits + 30, truncated
+                task = baseline ? () -> o.da.divide(o.db, Math.max(o.da.scale(), 0) + 30, RoundingMode.DOWN)
+                        : () -> o.fa.divide(o.fb);
+                break;
+            default:
+                throw new IllegalArgumentException(op);
+        }
+
+        String type = op.startsWith("int.") ? (baseline ? "BigInteger" : "AInteger") : (baseline ? "BigDecimal" : "AFloat");
+        String name = type + "." + op.substring(op.indexOf('.') + 1);
+
+        for (int i = 0; i < warmup; i++)
+            measure(task);
+        double[] samples = new double[iterations];
+        for (int i = 0; i < iterations; i++)
+            samples[i] = measure(task);
+        return new Result(name, o.intText.length(), samples);
+    }
+
+    // one iteration: as many calls as fit into iterationNanos (at least one), ns per call
+    private static double measure(Supplier<Object> task) {
+        long start = System.nanoTime(), end = start + iterationNanos, now;
+        long calls = 0;
+        int hash = 0;
+        do {
+            hash += task.get().hashCode();
+            calls++;
+            now = System.nanoTime();
+        } while (now < end);
+        sink += hash;
+        return (double) (now - start) / calls;
+    }
+
+    private static String toJson(List<Result> results) {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append("    {\n");
+            sb.append("        \"jvm\" : \"").append(json(System.getProperty("java.vm.name"))).append("\",\n");
+            sb.append("        \"jdkVersion\" : \"").append(json(System.getProperty("java.version"))).append("\",\n");
+            sb.append("        \"benchmark\" : \"").append(r.benchmark).append("\",\n");
+            sb.append("        \"mode\" : \"avgt\",\n");
+            sb.append("        \"warmupIterations\" : ").append(warmup).append(",\n");
+            sb.append("        \"measurementIterations\" : ").append(iterations).append(",\n");
+            sb.append("        \"measurementTime\" : \"").append(iterationNanos / 1_000_000).append(" ms\",\n");
+            sb.append("        \"params\" : {\n            \"digits\" : \"").append(r.digits).append("\"\n        },\n");
+            sb.append("        \"primaryMetric\" : {\n");
+            sb.append("            \"score\" : ").append(jsonNumber(r.score())).append(",\n");
+            sb.append("            \"scoreError\" : ").append(jsonNumber(r.error())).append(",\n");
+            sb.append("            \"scoreUnit\" : \"ns/op\",\n");
+            sb.append("            \"rawData\" : [\n                [");
+            for (int j = 0; j < r.samples.length; j++)
+                sb.append(j == 0 ? "" : ", ").append(jsonNumber(r.samples[j]));
+            sb.append("]\n            ]\n        }\n    }").append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        return sb.append("]\n").toString();
+    }
+
+    private static String toCsv(List<Result> results) {
+        StringBuilder sb = new StringBuilder("benchmark,digits,score,error,unit\n");
+        for (Result r : results) {
+            sb.append(r.benchmark).append(',').append(r.digits).append(',').append(number(r.score())).append(',')
+                    .append(number(r.error())).append(",ns/op\n");
+        }
+        return sb.toString();
+    }
+
+    private static String number(double d) {
+        return Double.isNaN(d) ? "NaN" : String.format(Locale.ROOT, "%.3f", d);
+    }
+
+    // JSON has no NaN, JMH writes it as a string too
+    private static String jsonNumber(double d) {
+        return Double.isNaN(d) ? "\"NaN\"" : number(d);
+    }
+
+    private static String json(String s) {
+        return s == null ? "" : s.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
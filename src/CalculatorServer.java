@@ -0,0 +1,229 @@
+import arbitraryarithmetic.Parallelism;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Server mode: one long running JVM answers calculations over a local socket, so a caller pays
+// microseconds per calculation instead of a JVM start.
+//
+// Protocol: one request per line in the batch format ("int mul 12 34", "float eval sqrt(2) / 3"),
+// answered with one line, the result or the error message the CLI would print. Blank lines and
+// lines starting with '#' get no answer, "quit" closes the connection. Requests on one
+// connection are answered in order; open more connections to run calculations side by side.
+//
+// Every connection gets its own (virtual, on JDK 21+) thread that only does the I/O, the
+// calculations run on a fixed pool of worker threads with a bounded number of requests waiting
+// for them. When that queue is full a connection waits for a place (and stops reading, so the
+// client is slowed down by TCP) and answers "Server busy" if none frees up within the timeout.
+// A request line longer than maxLength bytes is refused without being parsed, a calculation that
+// takes longer than the timeout is answered with "Timed out" and cancelled: its worker is interrupted
+// and its Parallelism.runCancellable flag set, which the big multiplications and divisions check for
+// (AInteger.checkInterrupted), on the worker and in the tasks it forked to the parallel pool.
+final class CalculatorServer implements Closeable {
+    private final ServerSocketChannel server;
+    private final String address;
+    private final ExecutorService connections = connectionExecutor();
+    private final ExecutorService workers;
+    private final Semaphore slots; // running + waiting calculations
+    private final int maxLength;
+    private final long timeoutMillis;
+
+    // address is a port on the loopback interface ("7878", 0 picks a free one) or "unix:<path>"
+    CalculatorServer(String address, int threads, int queue, int maxLength, long timeoutMillis) throws IOException {
+        SocketAddress bindTo = socketAddress(address);
+        this.server = ServerSocketChannel.open(bindTo instanceof UnixDomainSocketAddress
+                ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET);
+        server.bind(bindTo);
+        this.address = bindTo instanceof UnixDomainSocketAddress ? address
+                : Integer.toString(((InetSocketAddress) server.getLocalAddress()).getPort());
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "MyInfArith-server");
+            t.setDaemon(true);
+            return t;
+        });
+        this.slots = new Semaphore(threads + queue);
+        this.maxLength = maxLength;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    // the port (or "unix:<path>") clients can connect to
+    String address() {
+        return address;
+    }
+
+    // accepts connections until the server is closed
+    void serve() throws IOException {
+        try {
+            while (true) {
+                SocketChannel client = server.accept();
+                connections.execute(() -> handle(client));
+            }
+        } catch (ClosedChannelException e) {
+            // closed, we are done
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        shutdown();
+    }
+
+    // same as close, for the shutdown hook
+    void shutdown() throws IOException {
+        server.close();
+        connections.shutdownNow();
+        workers.shutdownNow();
+        if (address.startsWith("unix:"))
+            Files.deleteIfExists(Paths.get(address.substring(5)));
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            InputStream in = new BufferedInputStream(Channels.newInputStream(client), 1 << 16);
+            Writer out = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), StandardCharsets.UTF_8), 1 << 16);
+            String line;
+            while ((line = readLine(in, maxLength)) != null) {
+                String trimmed = line.trim();
+                if (line != TOO_LONG && (trimmed.isEmpty() || trimmed.startsWith("#")))
+                    continue;
+                if (trimmed.equalsIgnoreCase("quit"))
+                    break;
+                MyInfArith.write(line == TOO_LONG ? "Request too long, the limit is " + maxLength + " bytes" : calculate(line), out);
+                out.write('\n');
+                out.flush();
+            }
+        } catch (IOException e) {
+            // the client went away, nothing to answer
+        }
+    }
+
+    // runs one request on the worker pool, waits at most the timeout for a place and for the result;
+    // the result is written out by the connection, so a long one streams instead of becoming a String
+    private Object calculate(String line) {
+        try {
+            if (!slots.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+                return "Server busy";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Server shutting down";
+        }
+        // whoever gets here first hands the place back: the calculation when it ends,
+        // or the connection when it gives up on a calculation that never started
+        AtomicBoolean started = new AtomicBoolean(), cancel = new AtomicBoolean();
+        Future<Object> result;
+        try {
+            result = workers.submit(() -> {
+                if (!started.compareAndSet(false, true))
+                    return null;
+                try {
+                    return Parallelism.runCancellable(cancel, () -> MyInfArith.calculateLine(line));
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            slots.release();
+            return "Server shutting down";
+        }
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return "Timed out after " + timeoutMillis + " ms";
+        } catch (ExecutionException e) {
+            return "Unexpected error: " + e.getCause().getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Server shutting down";
+        } finally {
+            cancel.set(true); // done or given up on, either way nothing may keep running
+            result.cancel(true);
+            if (started.compareAndSet(false, true))
+                slots.release();
+        }
+    }
+
+    // marker for a line that was longer than the limit (and has been skipped)
+    private static final String TOO_LONG = new String("");
+
+    // the next line without the '\n' (and '\r'), null at the end of the stream
+    private static String readLine(InputStream in, int maxLength) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) {
+                if (line.size() == 0)
+                    return null;
+                break;
+            }
+            if (line.size() >= maxLength) {
+                while ((c = in.read()) >= 0 && c != '\n')
+                    ; // throw the rest away
+                return TOO_LONG;
+            }
+            line.write(c);
+        }
+        String s = line.toString(StandardCharsets.UTF_8);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+
+    // a thread per task; virtual threads where the JDK has them (21+), platform threads before that
+    private static ExecutorService connectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "MyInfArith-connection");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    static SocketAddress socketAddress(String address) {
+        if (address.startsWith("unix:"))
+            return UnixDomainSocketAddress.of(address.substring(5));
+        int port;
+        try {
+            port = Integer.parseInt(address);
+        } catch (NumberFormatException e) {
+            port = -1;
+        }
+        if (port < 0 || port > 65535)
+            throw new IllegalArgumentException("Invalid address: " + address);
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    // Stand-in client: sends every line of in to the server at address and writes the answers to
+    // out, so "MyInfArith --connect 7878 < requests.txt" behaves like a batch run against the server.
+    // out is flushed at the end, not closed.
+    static void runClient(String address, BufferedReader in, Writer out) throws IOException {
+        SocketAddress target = socketAddress(address);
+        try (SocketChannel channel = SocketChannel.open(target)) {
+            Writer requests = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(channel), StandardCharsets.UTF_8));
+            BufferedReader answers = new BufferedReader(new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8));
+            String line;
+            while ((line = in.readLine()) != null) {
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#"))
+                    continue;
+                requests.write(line);
+                requests.write('\n');
+                requests.flush();
+                if (trimmed.equalsIgnoreCase("quit"))
+                    break;
+                String answer = answers.readLine();
+                if (answer == null)
+                    throw new EOFException("Server closed the connection");
+                out.write(answer);
+                out.write('\n');
+            }
+        } finally {
+            out.flush();
+        }
+    }
+}
@@ -1,18 +1,83 @@
 import arbitraryarithmetic.AInteger;
 import arbitraryarithmetic.AFloat;
+import arbitraryarithmetic.Expression;
+import arbitraryarithmetic.Metrics;
+import arbitraryarithmetic.ResultCache;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class MyInfArith {
+    private static final String USAGE = "Usage: java MyInfArith <int/float> <add/sub/mul/div> <operand1> <operand2>\n"
+            + "       java MyInfArith <int/float> eval \"<expression>\" [name=value ...]\n"
+            + "       java MyInfArith --batch [file] [--parallel N]\n"
+            + "       java MyInfArith --server [port|unix:path] [--threads N] [--queue N] [--max-length bytes] [--timeout ms]\n"
+            + "       java MyInfArith --connect <port|unix:path>\n"
+            + "In front of any of these: --metrics prints call counts, operand sizes and latencies per operation\n"
+            + "to stderr at exit, --cache <MB> keeps up to MB of big division / pow / parse results for reuse";
+
+    // compiled expressions by source text, so a batch that repeats a formula parses it (and its
+    // big literals) only once
+    private static final Map<String, Expression> COMPILED = new ConcurrentHashMap<>();
+    private static final int MAX_COMPILED = 10_000;
+
     public static void main(String[] args) {
+        while (args.length >= 1 && (args[0].equals("--metrics") || args[0].equals("--cache"))) {
+            if (args[0].equals("--metrics")) {
+                // printed at exit, so it also works for a server that is stopped with Ctrl-C / kill
+                Metrics.setEnabled(true);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(Metrics.snapshot())));
+                args = Arrays.copyOfRange(args, 1, args.length);
+            } else {
+                long megabytes;
+                try {
+                    megabytes = args.length >= 2 ? Long.parseLong(args[1]) : -1;
+                } catch (NumberFormatException e) {
+                    megabytes = -1;
+                }
+                if (megabytes < 0 || megabytes > Long.MAX_VALUE >> 20) {
+                    System.out.println("Invalid cache size: " + (args.length >= 2 ? args[1] : ""));
+                    return;
+                }
+                ResultCache.setCapacity(megabytes << 20);
+                args = Arrays.copyOfRange(args, 2, args.length);
+            }
+        }
+
+        if (args.length >= 1 && args[0].equals("--batch")) {
+            runBatch(args);
+            return;
+        }
+
+        if (args.length >= 1 && args[0].equals("--server")) {
+            runServer(args);
+            return;
+        }
+
+        if (args.length == 2 && args[0].equals("--connect")) {
+            runClient(args[1]);
+            return;
+        }
+
+        if (args.length >= 3 && args[1].equalsIgnoreCase("eval")) {
+            print(calculateExpression(args[0], args[2], Arrays.copyOfRange(args, 3, args.length)));
+            return;
+        }
+
         if (args.length != 4) {
-            System.out.println("Usage: java MyInfArith <int/float> <add/sub/mul/div> <operand1> <operand2>");
+            System.out.println(USAGE);
             return;
         }
 
-        String type = args[0];
-        String operation = args[1];
-        String operand1 = args[2];
-        String operand2 = args[3];
+        print(calculate(args[0], args[1], args[2], args[3]));
+    }
 
+    // One calculation, returns the result (an AInteger / AFloat, written out with write() so a huge
+    // number never becomes one String) or the error message to print instead
+    static Object calculate(String type, String operation, String operand1, String operand2) {
         try {
             if (type.equalsIgnoreCase("int")) {
                 AInteger num1 = new AInteger(operand1);
@@ -20,19 +85,15 @@ public class MyInfArith {
 
                 switch (operation.toLowerCase()) {
                     case "add":
-                        System.out.println(num1.add(num2));
-                        break;
+                        return num1.add(num2);
                     case "sub":
-                        System.out.println(num1.subtract(num2));
-                        break;
+                        return num1.subtract(num2);
                     case "mul":
-                        System.out.println(num1.multiply(num2));
-                        break;
+                        return num1.multiply(num2);
                     case "div":
-                        System.out.println(num1.divide(num2));
-                        break;
+                        return num1.divide(num2);
                     default:
-                        System.out.println("Invalid operation. Supported: add, sub, mul, div.");
+                        return "Invalid operation. Supported: add, sub, mul, div.";
                 }
 
             } else if (type.equalsIgnoreCase("float")) {
@@ -41,29 +102,262 @@ public class MyInfArith {
 
                 switch (operation.toLowerCase()) {
                     case "add":
-                        System.out.println(num1.add(num2));
-                        break;
+                        return num1.add(num2);
                     case "sub":
-                        System.out.println(num1.subtract(num2));
-                        break;
+                        return num1.subtract(num2);
                     case "mul":
-                        System.out.println(num1.multiply(num2));
-                        break;
+                        return num1.multiply(num2);
                     case "div":
-                        System.out.println(num1.divide(num2));
-                        break;
+                        return num1.divide(num2);
                     default:
-                        System.out.println("Invalid operation. Supported: add, sub, mul, div.");
+                        return "Invalid operation. Supported: add, sub, mul, div.";
                 }
             } else {
-                System.out.println("Invalid type. Supported types: int, float.");
+                return "Invalid type. Supported types: int, float.";
+            }
+        } catch (ArithmeticException e) {
+            return arithmeticError(e);
+        } catch (NumberFormatException e) {
+            return "Invalid number format: " + e.getMessage();
+        } catch (Exception e) {
+            return "Unexpected error: " + e.getMessage();
+        }
+    }
+
+    // The message of an ArithmeticException (like "Even root of negative number" or "Scale out of
+    // range"), a division by zero keeps its old wording
+    private static String arithmeticError(ArithmeticException e) {
+        String message = e.getMessage();
+        if (message == null || message.equals("Division by zero") || message.equals("/ by zero"))
+            return "Division by zero error";
+        return message;
+    }
+
+    // An expression with optional name=value assignments, returns the result or the error message
+    static Object calculateExpression(String type, String source, String[] assignments) {
+        try {
+            Expression expression = COMPILED.get(source);
+            if (expression == null) {
+                expression = Expression.compile(source);
+                if (COMPILED.size() >= MAX_COMPILED)
+                    COMPILED.clear(); // crude bound, a batch rarely has that many different formulas
+                COMPILED.put(source, expression);
             }
+
+            boolean isInt = type.equalsIgnoreCase("int");
+            if (!isInt && !type.equalsIgnoreCase("float"))
+                return "Invalid type. Supported types: int, float.";
+            Map<String, AInteger> intVariables = new HashMap<>();
+            Map<String, AFloat> floatVariables = new HashMap<>();
+            for (String assignment : assignments) {
+                int eq = assignment.indexOf('=');
+                if (eq <= 0)
+                    return "Invalid variable assignment: " + assignment;
+                String name = assignment.substring(0, eq);
+                String value = assignment.substring(eq + 1);
+                if (isInt)
+                    intVariables.put(name, new AInteger(value));
+                else
+                    floatVariables.put(name, new AFloat(value));
+            }
+
+            return isInt ? expression.evaluateInteger(intVariables) : expression.evaluateFloat(floatVariables);
         } catch (ArithmeticException e) {
-            System.out.println("Division by zero error");
+            return arithmeticError(e);
         } catch (NumberFormatException e) {
-            System.out.println("Invalid number format: " + e.getMessage());
+            return "Invalid number format: " + e.getMessage();
+        } catch (IllegalArgumentException e) {
+            return "Invalid expression: " + e.getMessage();
         } catch (Exception e) {
-            System.out.println("Unexpected error: " + e.getMessage());
+            return "Unexpected error: " + e.getMessage();
+        }
+    }
+
+    // One line of a batch ("int mul 12 34" or "float eval (1 + 2) / 3"), same output as the single
+    // calculation mode; for eval the rest of the line is the expression
+    static Object calculateLine(String line) {
+        String[] parts = line.trim().split("\\s+", 3);
+        if (parts.length == 3 && parts[1].equalsIgnoreCase("eval"))
+            return calculateExpression(parts[0], parts[2], new String[0]);
+        parts = line.trim().split("\\s+");
+        if (parts.length != 4)
+            return "Invalid line, expected: <int/float> <add/sub/mul/div> <operand1> <operand2>";
+        return calculate(parts[0], parts[1], parts[2], parts[3]);
+    }
+
+    // Writes a result of calculate...: numbers go out a digit chunk at a time, so printing a
+    // result with millions of digits doesn't need several times its size in Strings
+    static void write(Object result, Writer out) throws IOException {
+        if (result instanceof AInteger)
+            ((AInteger) result).writeTo(out);
+        else if (result instanceof AFloat)
+            ((AFloat) result).writeTo(out);
+        else
+            out.write(result.toString());
+    }
+
+    // one result line on stdout
+    private static void print(Object result) {
+        try {
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            write(result, out);
+            out.newLine();
+            out.flush();
+        } catch (IOException e) {
+            System.out.println("I/O error: " + e.getMessage());
+        }
+    }
+
+    // Batch mode: one calculation per line from a file (or stdin), one result line per calculation
+    // on stdout in the same order. Blank lines and lines starting with '#' are skipped.
+    // A bad line only prints its error message, the rest of the batch keeps going.
+    // With --parallel N the lines are computed on N threads, the output order stays the same.
+    private static void runBatch(String[] args) {
+        String file = null;
+        int threads = 1;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--parallel") && i + 1 < args.length) {
+                try {
+                    threads = Integer.parseInt(args[++i]);
+                } catch (NumberFormatException e) {
+                    threads = 0;
+                }
+                if (threads < 1) {
+                    System.out.println("Invalid thread count: " + args[i]);
+                    return;
+                }
+            } else if (file == null && !args[i].startsWith("--")) {
+                file = args[i];
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+
+        try (BufferedReader in = file == null
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8);
+                BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            if (threads == 1)
+                runSequential(in, out);
+            else
+                runParallel(in, out, threads);
+        } catch (IOException e) {
+            System.out.println("I/O error: " + e.getMessage());
+        }
+    }
+
+    // Server mode (CalculatorServer): answers batch lines over a local socket until it is killed.
+    // Defaults: port 7878, one worker thread per core, 256 waiting requests, 1 MB per request
+    // line and 10 s per calculation.
+    private static void runServer(String[] args) {
+        String address = "7878";
+        long[] options = { Runtime.getRuntime().availableProcessors(), 256, 1 << 20, 10_000 };
+        String[] names = { "--threads", "--queue", "--max-length", "--timeout" };
+        boolean addressGiven = false;
+        for (int i = 1; i < args.length; i++) {
+            int option = Arrays.asList(names).indexOf(args[i]);
+            if (option >= 0 && i + 1 < args.length) {
+                try {
+                    options[option] = Long.parseLong(args[++i]);
+                } catch (NumberFormatException e) {
+                    options[option] = -1;
+                }
+                if (options[option] < (option == 1 ? 0 : 1) || options[option] > Integer.MAX_VALUE) {
+                    System.out.println("Invalid value for " + names[option] + ": " + args[i]);
+                    return;
+                }
+            } else if (!addressGiven && !args[i].startsWith("--")) {
+                address = args[i];
+                addressGiven = true;
+            } else {
+                System.out.println(USAGE);
+                return;
+            }
+        }
+
+        try (CalculatorServer server = new CalculatorServer(address, (int) options[0], (int) options[1],
+                (int) options[2], options[3])) {
+            System.out.println("Listening on " + server.address());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    server.shutdown(); // removes the socket file of a unix socket on Ctrl-C / kill
+                } catch (IOException e) {
+                    // exiting anyway
+                }
+            }));
+            server.serve();
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException e) {
+            System.out.println("I/O error: " + e.getMessage());
+        }
+    }
+
+    // Sends stdin to a running server and prints the answers, like --batch but in the server's JVM
+    private static void runClient(String address) {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        try {
+            CalculatorServer.runClient(address, in, out); // flushes out, also when it fails (System.out stays open for the error)
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+        } catch (IOException e) {
+            System.out.println("I/O error: " + e.getMessage());
+        }
+    }
+
+    private static void runSequential(BufferedReader in, BufferedWriter out) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (isSkipped(line))
+                continue;
+            write(calculateLine(line), out);
+            out.newLine();
+        }
+    }
+
+    // Lines are handed to a pool as soon as they are read, results are written in input order.
+    // At most 64 lines per thread are in flight, so huge inputs are streamed, not held in memory.
+    private static void runParallel(BufferedReader in, BufferedWriter out, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "MyInfArith-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        Deque<Future<Object>> pending = new ArrayDeque<>();
+        int window = threads * 64;
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (isSkipped(line))
+                    continue;
+                String current = line;
+                pending.addLast(pool.submit(() -> calculateLine(current)));
+                if (pending.size() >= window)
+                    writeResult(pending.removeFirst(), out);
+            }
+            while (!pending.isEmpty())
+                writeResult(pending.removeFirst(), out);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void writeResult(Future<Object> result, BufferedWriter out) throws IOException {
+        try {
+            write(result.get(), out);
+        } catch (ExecutionException e) {
+            out.write("Unexpected error: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted");
         }
+        out.newLine();
+    }
+
+    private static boolean isSkipped(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#");
     }
 }
@@ -1,75 +1,94 @@
 package arbitraryarithmetic;
 
 import arbitraryarithmetic.AInteger;
+import java.io.*;
 import java.util.*;
 
 @SuppressWarnings("unused") // Suppressing useless warnings
 //
 // I have written most of comments considering a different base
 // So if i have written somewhere 'a digit' it highly points towards me using
-// the base 10000
-// therefore by a digit i mean -> 1234 is a digit, 123 is a digit
-// 1 is a digit and 9999 is a digit too
-// 10000 are two digits -> 1000 and 0
+// the base 10^9
+// therefore by a digit i mean -> 123456789 is a digit, 123 is a digit
+// 1 is a digit and 999999999 is a digit too
+// 1000000000 are two digits -> 1 and 0
 // I hope you get it :)
 // For ease of implementation, we can just directly use AInteger
 // class by scaling, and descaling the output :)
 // Value = unscaled * 10^{-scale}
+// scale is a free exponent, it can be negative too: 1e5 is unscaled 1 with scale -5,
+// so huge or tiny exponents never turn into stored zero digits
 // Precision rule (project doc):
 // – keep all mathematically exact digits during computation
 // – when printed, truncate (NOT round) to max 30 fractional digits.
 
-public class AFloat {
+public class AFloat implements Comparable<AFloat> {
 
-    private AInteger unscaled; // absolute value with no decimal point
-    private int scale; // number of digits right of decimal point
-    private boolean isNegative; // store the sign
+    // never changed after the constructor, like AInteger
+    private final AInteger unscaled; // absolute value with no decimal point
+    private final int scale; // number of digits right of decimal point (negative -> trailing zeros left of it)
+    private final boolean isNegative; // store the sign
+    private int hash; // hashCode, 0 until it is first asked for
 
     // 0.0 default
     public AFloat() {
-        this.unscaled = new AInteger(0);
+        this.unscaled = AInteger.ZERO;
         this.scale = 0;
         this.isNegative = false;
     }
 
-    // from string (examples: "-123.45", "9876", ".0012", "-.5")
+    // from string (examples: "-123.45", "9876", ".0012", "-.5", "1.5e-100000", "2E+7")
     public AFloat(String s) {
+        long start = Metrics.start();
         if (s == null || s.isEmpty()) // Empty string returns an exception
             throw new IllegalArgumentException("Empty string");
         // sign check
-        isNegative = s.charAt(0) == '-';
-        int start = (s.charAt(0) == '+' || s.charAt(0) == '-') ? 1 : 0;
-        // Main implementation where string is parse after the sign
-        // split integer / fractional parts
-        int dot = s.indexOf('.', start);
-        String intPart, fracPart;
-        if (dot == -1) { // if no decimal, then fractional part doesn't exist
-            intPart = s.substring(start);
-            fracPart = "";
-        } else { // if it does exist, then strat to dot is characterstic of the number and the
-                 // remaining part is the mantissa
-            intPart = s.substring(start, dot);
-            fracPart = s.substring(dot + 1);
+        boolean negative = s.charAt(0) == '-';
+        int from = (s.charAt(0) == '+' || s.charAt(0) == '-') ? 1 : 0;
+
+        // scientific notation: mantissa 'e' exponent, value = mantissa * 10^exponent
+        int end = s.length();
+        int exponent = 0;
+        int e = Math.max(s.indexOf('e', from), s.indexOf('E', from));
+        if (e != -1) {
+            exponent = Integer.parseInt(s.substring(e + 1)); // NumberFormatException if it's not a number
+            end = e;
         }
-        if (intPart.isEmpty())
-            intPart = "0";
-        if (fracPart.isEmpty())
-            fracPart = "0";
 
-        // remove leading zeros in int part, trailing zeros in frac part, using basic
-        // string operations
-        intPart = intPart.replaceFirst("^0+(?!$)", "");
-        fracPart = fracPart.replaceFirst("0+$", "");
-        scale = fracPart.length(); // scale of the number for example 0.001 has scale 3 since 0.001 = 1* 10^-3
+        // Main implementation where string is parse after the sign
+        // find the decimal point, everything after it (minus trailing zeros) is the fraction
+        int dot = s.indexOf('.', from);
+        if (dot >= end)
+            throw new NumberFormatException("For input string: \"" + s + "\"");
+        int fracDigits = 0;
+        if (dot != -1) {
+            // trailing zeros in the frac part don't change the value, skip them
+            while (end > dot + 1 && s.charAt(end - 1) == '0')
+                end--;
+            fracDigits = end - dot - 1; // for example 0.001 has 3 since 0.001 = 1* 10^-3
+        }
+        // leading zeros (also the ones after the point in 0.000…001) don't change the value either,
+        // so they are skipped instead of being turned into zero digits
+        int first = from;
+        while (first < end && (s.charAt(first) == '0' || first == dot))
+            first++;
 
-        // concatenate to one big integer string
-        String combined = intPart + fracPart;
-        if (combined.isEmpty())
-            combined = "0";
+        // scale of the number: digits right of the point minus the exponent, can be negative (1e5 -> -5)
+        long exactScale = (long) fracDigits - exponent;
+        if (exactScale != (int) exactScale)
+            throw new NumberFormatException("Exponent out of range: \"" + s + "\"");
 
-        unscaled = new AInteger(combined);
-        if (unscaled.size() == 1 && unscaled.toString().equals("0"))
-            isNegative = false; // -0 → +0
+        // significant digits read as one big integer, the dot is skipped in place
+        // (long ones that come again are looked up, see ResultCache)
+        boolean cached = ResultCache.applies((end - first) / AInteger.BASE_DIGITS);
+        AInteger hit = cached ? (AInteger) ResultCache.get(ResultCache.Kind.PARSE_FLOAT, s, null) : null;
+        unscaled = hit != null ? hit : new AInteger(AInteger.parseDigits(s, first, end, dot), false);
+        if (cached && hit == null)
+            ResultCache.put(ResultCache.Kind.PARSE_FLOAT, s, null, unscaled, s.length() + 4L * unscaled.value.length);
+        boolean zero = unscaled.isZero();
+        isNegative = negative && !zero; // -0 → +0
+        scale = zero ? 0 : (int) exactScale;
+        Metrics.record(Metrics.Operation.FLOAT_PARSE, start, unscaled.value.length);
     }
 
     // Using AInteger -> makes life easy :)
@@ -79,6 +98,23 @@ public class AFloat {
         this.isNegative = n < 0;
     }
 
+    // Internal constructor, value = (isNegative ? -1 : 1) * |unscaled| * 10^{-scale}
+    // it does not strip trailing zeros, so results that are thrown away soon don't pay for it
+    AFloat(AInteger unscaled, int scale, boolean isNegative) {
+        this.unscaled = unscaled;
+        this.scale = unscaled.isZero() ? 0 : scale;
+        this.isNegative = isNegative && !unscaled.isZero();
+    }
+
+    // the value as exact pieces (for ARational, AMath): signed unscaled and scale
+    AInteger signedUnscaled() {
+        return isNegative ? unscaled.negate() : unscaled;
+    }
+
+    int scale() {
+        return scale;
+    }
+
     // Copy operator
     public AFloat(AFloat other) {
         this.unscaled = new AInteger(other.unscaled);
@@ -91,28 +127,14 @@ public class AFloat {
         return new AFloat(s);
     }
 
-    // powerOfTen(n) --> 10^n as AInteger
-    private static AInteger pow10(int n) {
-        if (n <= 0)
-            return new AInteger(1);
-        // 10^n = (10^4)^{k} · 10^{r}
-        int k = n / 4;
-        int r = n % 4;
-        AInteger ten4 = new AInteger(10000);
-        AInteger res = new AInteger(1);
-        for (int i = 0; i < k; i++)
-            res = res.multiply(ten4);
-        int small = (int) Math.pow(10, r);
-        res = res.multiply(new AInteger(small));
-        return res;
-    }
-
     // Addition function for AFloat
     public AFloat add(AFloat other) {
-        // Align the scales
+        // Align the scales, the one with the smaller scale gets multiplied by a power of ten
+        // (mostly a digit shift, see AInteger.scaleByPowerOfTen), the other one stays as it is
+        long start = Metrics.start();
         int common = Math.max(this.scale, other.scale);
-        AInteger u1 = this.unscaled.multiply(pow10(common - this.scale)); // Converts it to AInteger by scaling it
-        AInteger u2 = other.unscaled.multiply(pow10(common - other.scale)); // Converts it to AInteger by scaling it
+        AInteger u1 = this.unscaled.scaleByPowerOfTen(common - this.scale);
+        AInteger u2 = other.unscaled.scaleByPowerOfTen(common - other.scale);
 
         AInteger res; // Result
         boolean neg; // Neg or pos?
@@ -129,130 +151,339 @@ public class AFloat {
                 neg = other.isNegative; // |u2| > |u1|
             }
         }
-        AFloat out = new AFloat();
-        out.unscaled = res;
-        out.scale = common;
-        out.isNegative = neg && !(res.size() == 1 && res.toString().equals("0"));
-        out.stripZeros(); // Strip leading zeros
+        AFloat out = stripZeros(res, common, neg); // Strip trailing zeros
+        Metrics.record(Metrics.Operation.FLOAT_ADD, start, Math.max(u1.value.length, u2.value.length));
         return out;
     }
 
     // Subtract function, just use addition function by negating the second number
     public AFloat subtract(AFloat other) {
         // a - b == a + (-b)
-        AFloat negOther = new AFloat(other);
-        negOther.isNegative = !other.isNegative;
-        return this.add(negOther);
+        return this.add(other.negate());
+    }
+
+    // -this (shares the digits, they are never changed in place)
+    public AFloat negate() {
+        return new AFloat(unscaled, scale, !isNegative);
+    }
+
+    // |this|
+    public AFloat abs() {
+        return isNegative ? negate() : this;
+    }
+
+    // -1, 0 or 1 depending on the sign
+    public int signum() {
+        return isNegative ? -1 : (unscaled.isZero() ? 0 : 1);
+    }
+
+    // Addition rounded to mc.getPrecision() significant digits (exact for an unlimited context)
+    public AFloat add(AFloat other, PrecisionContext mc) {
+        if (mc.isUnlimited())
+            return add(other);
+        if (other.unscaled.isZero())
+            return round(mc);
+        if (this.unscaled.isZero())
+            return other.round(mc);
+
+        // x is the operand with the bigger magnitude (by its top digit), y the other one
+        AFloat x = this, y = other;
+        if (y.topExponent() > x.topExponent()) {
+            x = other;
+            y = this;
+        }
+
+        // If y lies completely below the lowest digit of x and below the last digit the result
+        // keeps (with 2 digits to spare) only its sign can still change the rounding, so it is
+        // replaced by a stand-in 10^(floor - 3) of the same sign. Then aligning the scales costs
+        // about precision digits instead of the whole exponent gap (1e100000 + 1 stays small).
+        long lowestX = -(long) x.scale;
+        long lastKept = x.topExponent() - 1 - mc.getPrecision(); // the sum can lose one top digit
+        long floor = Math.min(lowestX, lastKept);
+        if (y.topExponent() <= floor - 3)
+            y = new AFloat(AInteger.ONE, Math.toIntExact(3 - floor), y.isNegative);
+
+        AFloat sum = x.add(y);
+        return roundTo(sum.unscaled, sum.scale, sum.isNegative, mc, false);
+    }
+
+    // Subtraction rounded to the context
+    public AFloat subtract(AFloat other, PrecisionContext mc) {
+        return this.add(other.negate(), mc);
+    }
+
+    // scale of this * other, the exponents add up
+    private int productScale(AFloat other) {
+        long scale = (long) this.scale + other.scale;
+        if (scale != (int) scale)
+            throw new ArithmeticException("Scale out of range");
+        return (int) scale;
     }
 
     // Multiply function
     public AFloat multiply(AFloat other) {
-        AFloat out = new AFloat();
-        out.unscaled = this.unscaled.multiply(other.unscaled); // Simply multiply the unscaled part
-        out.scale = this.scale + other.scale; // Scale is added in multiplication x*10^a * y*10^b -> (x*y)* 10^(a+b),
-                                              // the scales are a and b, and they are added in the product
-        out.isNegative = (this.isNegative != other.isNegative); // IF same -> is not negative otherwise positive
-        out.stripZeros();
+        // Simply multiply the unscaled part
+        // Scale is added in multiplication x*10^a * y*10^b -> (x*y)* 10^(a+b),
+        // the scales are a and b, and they are added in the product
+        // IF same -> is not negative otherwise positive
+        int scale = productScale(other);
+        long start = Metrics.start();
+        AFloat out = stripZeros(this.unscaled.multiply(other.unscaled), scale,
+                this.isNegative != other.isNegative);
+        Metrics.record(Metrics.Operation.FLOAT_MULTIPLY, start, Math.max(unscaled.value.length, other.unscaled.value.length));
         return out;
     }
 
+    // Multiplication rounded to the context, keeps chained products at a fixed size
+    public AFloat multiply(AFloat other, PrecisionContext mc) {
+        int scale = productScale(other);
+        long start = Metrics.start();
+        AInteger product = this.unscaled.multiply(other.unscaled);
+        AFloat out = roundTo(product, scale, this.isNegative != other.isNegative, mc, false);
+        Metrics.record(Metrics.Operation.FLOAT_MULTIPLY, start, Math.max(unscaled.value.length, other.unscaled.value.length));
+        return out;
+    }
+
+    // Division with mc.getPrecision() significant digits, only precision + 1 quotient digits are
+    // computed and the remainder decides the rounding.
+    // An unlimited context gives the same result as divide(other).
+    public AFloat divide(AFloat other, PrecisionContext mc) {
+        if (mc.isUnlimited())
+            return divide(other);
+        if (other.unscaled.isZero())
+            throw new ArithmeticException("Division by zero");
+        boolean neg = this.isNegative != other.isNegative;
+        if (this.unscaled.isZero())
+            return new AFloat();
+
+        long start = Metrics.start();
+        // u1 * 10^k / u2 has at least precision + 1 digits with this k:
+        // u1 * 10^k >= 10^(len1 + k - 1) = 10^(len2 + precision) > u2 * 10^precision
+        long k = (long) mc.getPrecision() + 1 - AInteger.decimalLength(this.unscaled.value)
+                + AInteger.decimalLength(other.unscaled.value);
+        long resultScale = (long) this.scale - other.scale + k;
+        if (k != (int) k || resultScale != (int) resultScale)
+            throw new ArithmeticException("Scale out of range");
+        AInteger dividend = this.unscaled.scaleByPowerOfTen((int) Math.max(k, 0));
+        AInteger divisor = other.unscaled.scaleByPowerOfTen((int) Math.max(-k, 0));
+        AInteger[] qr = dividend.divideAndRemainder(divisor);
+
+        AFloat out = roundTo(qr[0], (int) resultScale, neg, mc, !qr[1].isZero());
+        Metrics.record(Metrics.Operation.FLOAT_DIVIDE, start, dividend.value.length);
+        return out;
+    }
+
+    // This number rounded to mc.getPrecision() significant digits
+    public AFloat round(PrecisionContext mc) {
+        return roundTo(unscaled, scale, isNegative, mc, false);
+    }
+
+    // Rounds |u| * 10^{-scale} to the context. sticky says that the real value is a bit bigger
+    // than u (there was a non-zero remainder), which matters for the rounding decision.
+    private static AFloat roundTo(AInteger u, int scale, boolean neg, PrecisionContext mc, boolean sticky) {
+        int drop = 0;
+        if (!mc.isUnlimited() && !u.isZero())
+            drop = Math.max(AInteger.decimalLength(u.value) - mc.getPrecision(), 0);
+        if (drop == 0 && !sticky) { // already short enough
+            return stripZeros(u, scale, neg);
+        }
+
+        // look at the digits that get dropped: the first one and whether anything after it is non-zero
+        int firstDropped = drop > 0 ? u.decimalDigit(drop - 1) : 0;
+        boolean restNonZero = sticky || (drop > 1 && u.hasNonZeroDecimals(drop - 1));
+        AInteger kept = u.divideByPowerOfTen(drop);
+        if (mc.roundsUp(neg, kept.value[0] % 10, firstDropped, restNonZero))
+            kept = kept.add(AInteger.ONE);
+
+        return stripZeros(kept, Math.subtractExact(scale, drop), neg);
+    }
+
+    // the E with 10^(E-1) <= |this| < 10^E, i.e. the position just above the top digit
+    private long topExponent() {
+        return (long) AInteger.decimalLength(unscaled.value) - scale;
+    }
+
     public AFloat divide(AFloat other) {
-        if (other.unscaled.size() == 1 && other.unscaled.toString().equals("0"))
+        if (other.unscaled.isZero())
             throw new ArithmeticException("Division by zero");
 
+        long start = Metrics.start();
         final int RESULT_SCALE = 30; // we need ≤30 fractional digits
-        // Formula: (u1 / 10^s1) / (u2 / 10^s2)
-        // = u1 * 10^{s2+RESULT_SCALE} / u2 * 10^{-(s1+RESULT_SCALE)}
-        AInteger dividend = this.unscaled.multiply(pow10(other.scale + RESULT_SCALE));
-        AInteger quotient = dividend.divide(other.unscaled);
-
-        AFloat out = new AFloat();
-        out.unscaled = quotient;
-        out.scale = this.scale + RESULT_SCALE;
-        out.isNegative = (this.isNegative != other.isNegative);// IF same -> is not negative otherwise positive
-        out.stripZeros();
+        // Formula: (u1 / 10^s1) / (u2 / 10^s2) = (u1 * 10^k / u2) * 10^{-(s1 - s2 + k)}
+        // k is picked so the result has s1 + 30 fractional digits (at least 30 for negative scales),
+        // when k comes out negative the divisor is scaled instead
+        int resultScale = Math.max(this.scale, 0) + RESULT_SCALE;
+        long k = (long) resultScale - this.scale + other.scale;
+        if (k != (int) k)
+            throw new ArithmeticException("Scale out of range");
+        AInteger dividend = this.unscaled.scaleByPowerOfTen((int) Math.max(k, 0));
+        AInteger divisor = other.unscaled.scaleByPowerOfTen((int) Math.max(-k, 0));
+        AInteger quotient = dividend.divide(divisor);
+
+        AFloat out = stripZeros(quotient, resultScale, this.isNegative != other.isNegative);// IF same -> is not negative otherwise positive
+        Metrics.record(Metrics.Operation.FLOAT_DIVIDE, start, dividend.value.length);
         return out;
     }
 
-    // remove trailing zeros in unscaled and adjust scale; also normalise -0 → +0
-    private void stripZeros() {
-        // remove trailing decimal zeros (i.e., factors of 10) from unscaled
-        while (scale > 0) {
-            // quick check: last digit and possible power-of-10 in base10k
-            if (unscaled.value.get(0) % 10 != 0)
-                break;
-            // divide by 10 by repeated subtraction of digits
-            AInteger[] div10 = divMod10(unscaled);
-            if (div10[1].size() == 1 && div10[1].toString().equals("0")) { // remainder 0
-                unscaled = div10[0];
-                scale--;
-            } else
-                break;
+    // this^exponent with mc.getPrecision() significant digits, see AMath.pow
+    public AFloat pow(AFloat exponent, PrecisionContext mc) {
+        return AMath.pow(this, exponent, mc);
+    }
+
+    // Square root truncated to 30 fractional digits, the same rule as divide(other)
+    public AFloat sqrt() {
+        return sqrt(PrecisionContext.UNLIMITED);
+    }
+
+    // Square root with mc.getPrecision() significant digits, rounded like divide(other, mc).
+    // It's one integer square root (AInteger.sqrtAndRemainder, Newton with precision doubling)
+    // of the unscaled value shifted so that the root has just precision + 1 digits.
+    public AFloat sqrt(PrecisionContext mc) {
+        if (isNegative)
+            throw new ArithmeticException("Square root of negative number");
+        if (unscaled.isZero())
+            return new AFloat();
+
+        long start = Metrics.start();
+        // sqrt(u * 10^-s) = sqrt(u * 10^t) * 10^-((s + t) / 2) with s + t even
+        long t;
+        if (mc.isUnlimited()) {
+            t = 2L * 30 - scale; // 30 fractional digits
+        } else {
+            t = 2L * (mc.getPrecision() + 1) - AInteger.decimalLength(unscaled.value);
+            if (((scale + t) & 1) != 0)
+                t++;
         }
-        // if value is exactly 0 → sign = positive
-        if (unscaled.size() == 1 && unscaled.toString().equals("0"))
-            isNegative = false;
-    }
-
-    // divides an AInteger by 10, returns [quotient, remainder]
-    private static AInteger[] divMod10(AInteger num) {
-        // long division base-10 on base-10000 digits
-        List<Integer> res = new ArrayList<>(Collections.nCopies(num.value.size(), 0));
-        int rem = 0;
-        for (int i = num.value.size() - 1; i >= 0; i--) {
-            int cur = num.value.get(i) + rem * 10000;
-            res.set(i, cur / 10);
-            rem = cur % 10;
+        long resultScale = (scale + t) / 2;
+        if (t != (int) t || resultScale != (int) resultScale)
+            throw new ArithmeticException("Scale out of range");
+        // when t < 0 the dropped digits can't change the integer root, only the rounding
+        AInteger radicand = t >= 0 ? unscaled.scaleByPowerOfTen((int) t) : unscaled.divideByPowerOfTen((int) -t);
+        boolean sticky = t < 0 && unscaled.hasNonZeroDecimals((int) -t);
+        AInteger[] sr = radicand.sqrtAndRemainder();
+
+        AFloat out;
+        if (mc.isUnlimited()) {
+            out = stripZeros(sr[0], (int) resultScale, false);
+        } else {
+            out = roundTo(sr[0], (int) resultScale, false, mc, sticky || !sr[1].isZero());
         }
-        AInteger q = new AInteger();
-        q.value = res;
-        q.stripZeros();
-        AInteger r = new AInteger(rem);
-        return new AInteger[] { q, r };
+        Metrics.record(Metrics.Operation.FLOAT_SQRT, start, radicand.value.length);
+        return out;
     }
 
-    @Override
-    public String toString() {
-        // Convert the absolute value to a decimal string
-        String digits = unscaled.toString(); // unscaled value, no sign
-        int len = digits.length();
-
-        // Work out integer and fractional parts
-        // Scale = how many digits belong after the decimal point
-        int cut = Math.max(len - scale, 0); // index where fractional part starts
-        String intPart = (cut == 0) ? "0" : digits.substring(0, cut);
-        String fracPart = digits.substring(cut); // may be empty
-
-        // Pad with leading zeros if we don’t have enough digits for the scale
-        if (fracPart.length() < scale) {
-            fracPart = "0".repeat(scale - fracPart.length()) + fracPart;
+    // |unscaled| * 10^-scale with the trailing zeros removed from unscaled and the scale adjusted;
+    // also normalises -0 → +0 (the constructor does that)
+    // The zeros are counted straight from the digits (whole zero digits + zeros of the lowest
+    // non-zero one) and removed in one go, so this is O(1) when there is nothing to strip
+    // (the usual case) and one pass over unscaled otherwise.
+    // Internal callers that don't need the canonical form can skip it, see AFloat(AInteger, int, boolean)
+    private static AFloat stripZeros(AInteger unscaled, int scale, boolean isNegative) {
+        // remove trailing decimal zeros (i.e., factors of 10) from unscaled, the scale is a free
+        // exponent so this may go below 0 (100 -> 1 with scale -2); 0 has none
+        long start = Metrics.start();
+        int zeros = unscaled.trailingDecimalZeros();
+        if (zeros > 0) {
+            unscaled = unscaled.divideByPowerOfTen(zeros);
+            scale = Math.subtractExact(scale, zeros);
         }
+        Metrics.record(Metrics.Operation.FLOAT_STRIP_ZEROS, start, unscaled.value.length);
+        return new AFloat(unscaled, scale, isNegative);
+    }
 
-        //
-        // At this point fracPart has exactly `scale` digits.
-        // Now force **exactly 30** digits after the decimal:
-        // * pad with trailing zeros if scale < 30
-        // * truncate if scale > 30 (no rounding)
-        // * keep as-is if scale == 30
-        //
-        if (scale < 30) {
-            fracPart = fracPart + "0".repeat(30 - scale);
-        } else if (scale > 30) {
-            fracPart = fracPart.substring(0, 30);
+    // numeric order (1.50 and 1.5 are equal)
+    @Override
+    public int compareTo(AFloat other) {
+        int sign = signum();
+        if (sign != other.signum())
+            return Integer.compare(sign, other.signum());
+        if (sign == 0)
+            return 0;
+        // different top exponents decide without looking at the digits
+        int cmp = Long.compare(topExponent(), other.topExponent());
+        if (cmp == 0) { // same length above the point, align the scales and compare the digits
+            int common = Math.max(scale, other.scale);
+            cmp = AInteger.compareAbsolute(unscaled.scaleByPowerOfTen(common - scale),
+                    other.unscaled.scaleByPowerOfTen(common - other.scale));
         }
+        return isNegative ? -cmp : cmp;
+    }
+
+    // same value, no matter how many trailing zeros the unscaled parts carry
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof AFloat))
+            return false;
+        return compareTo((AFloat) o) == 0;
+    }
 
-        // Handle the special case “0.000…”
-        // (unscaled could be zero even when scale > 0)
-        boolean isZero = intPart.equals("0") && fracPart.chars().allMatch(ch -> ch == '0');
+    // hash of the stripped form, so equal values hash alike; computed once and kept
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            AFloat s = stripZeros(unscaled, scale, isNegative);
+            h = (s.unscaled.hashCode() * 31 + s.scale) * 31 + (s.isNegative ? 1 : 0);
+            hash = h;
+        }
+        return h;
+    }
 
-        // Assemble the final string
-        StringBuilder sb = new StringBuilder(intPart.length() + 32);
-        if (isNegative && !isZero)
-            sb.append('-');
-        sb.append(intPart).append('.').append(fracPart);
+    // The integer part, a point and exactly 30 fractional digits (truncated, not rounded),
+    // e.g. 2.5 -> 2.500000000000000000000000000000
+    @Override
+    public String toString() {
+        int length = AInteger.decimalLength(unscaled.value);
+        StringBuilder sb = new StringBuilder((int) Math.min(Math.max((long) length - scale, 1) + 32, Integer.MAX_VALUE - 8));
+        try {
+            write(new DigitWriter(sb));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a StringBuilder doesn't throw
+        }
         return sb.toString();
     }
 
+    // Writes the same characters as toString() to out, a few KB at a time. Only the digits that
+    // are printed are ever looked at: for 1.5e-1000000 that is the 30 zeros after the point, not
+    // a million digit string cut down to 30. out is not flushed.
+    public void writeTo(Appendable out) throws IOException {
+        write(new DigitWriter(out));
+    }
+
+    // Same as ASCII bytes
+    public void writeTo(OutputStream out) throws IOException {
+        write(new DigitWriter(out));
+    }
+
+    // A PrintStream (System.out) is both of the above, its bytes are the cheaper way in
+    public void writeTo(PrintStream out) throws IOException {
+        write(new DigitWriter((OutputStream) out));
+    }
+
+    // Value = unscaled * 10^-scale, so the digit of unscaled at position e (0 = its ones digit)
+    // is the one at 10^(e - scale): the integer part is positions length - 1 down to scale (below
+    // 0 there are only zeros, for a negative scale), the fraction positions scale - 1 to scale - 30.
+    private void write(DigitWriter out) throws IOException {
+        long start = Metrics.start();
+        int[] u = unscaled.value;
+        int length = AInteger.decimalLength(u);
+        long scale = this.scale;
+        // zero when nothing is left in the first 30 fractional digits either, then no "-"
+        boolean zero = unscaled.isZero() || length <= scale - 30;
+        if (isNegative && !zero)
+            out.put('-');
+        if (!unscaled.isZero() && length > scale)
+            out.digits(u, length - 1, scale);
+        else
+            out.put('0');
+        out.put('.');
+        out.digits(u, scale - 1, scale - 30);
+        out.flush();
+        Metrics.record(Metrics.Operation.FLOAT_TO_STRING, start, u.length);
+    }
+
     // truncate / pad to ≤30 fractional digits, remove trailing zeros if needed
     private String trimFraction(String s) {
         int dot = s.indexOf('.');
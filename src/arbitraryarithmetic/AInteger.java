@@ -1,64 +1,149 @@
 package arbitraryarithmetic;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 
 // I have written most of comments considering a different base
-// So if i have written somewhere 'a digit' it highly points towards me using the base 10000
-// therefore by a digit i mean -> 1234 is a digit, 123 is a digit
-// 1 is a digit and 9999 is a digit too
-// 10000 are two digits -> 1000 and 0
+// So if i have written somewhere 'a digit' it highly points towards me using the base 10^9
+// therefore by a digit i mean -> 123456789 is a digit, 123 is a digit
+// 1 is a digit and 999999999 is a digit too
+// 1000000000 are two digits -> 1 and 0
 // I hope you get it :)
-public class AInteger {
-    // Storing the Integer in base10000, Least significant digits first
-    List<Integer> value = new ArrayList<>();
+public class AInteger implements Comparable<AInteger> {
+    // One digit (limb) holds 9 decimal digits, 10^9 is the biggest power of ten that fits in an int
+    static final int BASE = 1_000_000_000;
+    static final int BASE_DIGITS = 9;
+    // 10^0 .. 10^8, every power of ten below the base
+    static final int[] POW10 = { 1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000 };
+
+    // The school add / subtract / multiply loops have SIMD versions (VectorKernels). They need the
+    // incubating jdk.incubator.vector module (java --add-modules jdk.incubator.vector ...), without
+    // it VECTOR is false and the scalar loops below are used; -Darbitraryarithmetic.vector=false
+    // turns them off by hand. Below the thresholds (base 10^9 digits) the scalar loops are faster.
+    static final boolean VECTOR = Boolean.parseBoolean(System.getProperty("arbitraryarithmetic.vector", "true"))
+            && vectorKernels();
+    static final int VECTOR_ADD_THRESHOLD = Integer.getInteger("arbitraryarithmetic.vectorAddThreshold", 64);
+    static final int VECTOR_MULTIPLY_THRESHOLD = Integer.getInteger("arbitraryarithmetic.vectorMultiplyThreshold", 12);
+
+    // Sizes (in base 10^9 digits) above which multiply switches from the school method to
+    // Karatsuba, then to Toom-Cook 3 and finally to the NTT (NumberTheoreticTransform), squaring has its own (higher) limits because the
+    // school squaring is already about twice as fast as a general multiply.
+    // They can be tuned with -Darbitraryarithmetic.karatsubaThreshold=... and friends.
+    // The SIMD school method is 2-3x faster, so with it Karatsuba only pays off later.
+    static final int KARATSUBA_THRESHOLD = Integer.getInteger("arbitraryarithmetic.karatsubaThreshold", VECTOR ? 80 : 40);
+    static final int TOOM3_THRESHOLD = Integer.getInteger("arbitraryarithmetic.toom3Threshold", 150);
+    static final int KARATSUBA_SQUARE_THRESHOLD = Integer.getInteger("arbitraryarithmetic.karatsubaSquareThreshold", VECTOR ? 80 : 70);
+    static final int TOOM3_SQUARE_THRESHOLD = Integer.getInteger("arbitraryarithmetic.toom3SquareThreshold", 200);
+    static final int NTT_THRESHOLD = Integer.getInteger("arbitraryarithmetic.nttThreshold", 600);
+
+    // Division uses Knuth's Algorithm D, and Burnikel-Ziegler once the divisor has at least
+    // BURNIKEL_ZIEGLER_THRESHOLD digits and the dividend is BURNIKEL_ZIEGLER_OFFSET digits longer
+    static final int BURNIKEL_ZIEGLER_THRESHOLD = Integer.getInteger("arbitraryarithmetic.burnikelZieglerThreshold", 60);
+    static final int BURNIKEL_ZIEGLER_OFFSET = Integer.getInteger("arbitraryarithmetic.burnikelZieglerOffset", 30);
+
+    // Storing the Integer in base 10^9, Least significant digits first
+    // The array is always trimmed: the last digit is non-zero, except for 0 itself which is {0}
+    // An AInteger never changes after it is built and the digits are shared freely (negate, the
+    // valueOf cache, ...), so nothing may ever write into value after the constructor.
+    final int[] value;
     // boolean for negative numbers, true -> Negative else positive
-    boolean isNegative = false;
+    final boolean isNegative;
+    private int hash; // hashCode, 0 until it is first asked for
+
+    // valueOf hands out shared instances for CACHE_LOW..CACHE_HIGH, small numbers are by far the
+    // most common ones (counters, exponents, carries, the 1 of kept.add(ONE)) and this way they
+    // cost no allocation. Sharing is fine since results never change the digits or sign of an operand.
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 1024;
+    private static final AInteger[] CACHE = new AInteger[CACHE_HIGH - CACHE_LOW + 1];
+
+    static {
+        for (int i = CACHE_LOW; i <= CACHE_HIGH; i++)
+            CACHE[i - CACHE_LOW] = new AInteger(new int[] { Math.abs(i) }, i < 0);
+    }
+
+    public static final AInteger ZERO = valueOf(0);
+    public static final AInteger ONE = valueOf(1);
+    public static final AInteger TEN = valueOf(10);
+
+    // Numbers with at most SMALL digits are below 10^18, so they fit in a long with room for a
+    // sum: add, subtract, multiply (while the product doesn't overflow), divide and mod work on
+    // longs for them and skip the digit loops and the arrays in between.
+    static final int SMALL = 2;
 
     // Default constructor, initialize to 0
     public AInteger() {
-        value.add(0); // Add 0 to the list because the number is 0
+        value = new int[] { 0 }; // Just a single 0 digit because the number is 0
+        isNegative = false;
     }
 
     // String -> AInteger Constructor
     public AInteger(String number) {
+        long start = Metrics.start();
         if (number == null || number.isEmpty()) {
             throw new IllegalArgumentException("Invalid input string"); // If the input is empty or null, throw an error
         }
 
-        isNegative = number.charAt(0) == '-'; // Check if the number starts with '-' to know if it's negative
+        boolean negative = number.charAt(0) == '-'; // Check if the number starts with '-' to know if it's negative
         boolean positiveSign = number.charAt(0) == '+'; // Check if the number starts with '+'
-        int start = (isNegative || positiveSign) ? 1 : 0; // If negative, start reading from the second character
-
-        // Read the number backwards, in digits of 4 digits
-        for (int i = number.length(); i > start; i -= 4) {
-            int end = i; // End of the digit
-            int begin = Math.max(start, i - 4); // Start of the digit (or the beginning of the number)
-            String segment = number.substring(begin, end); // Get the digit
-            value.add(Integer.parseInt(segment)); // Convert the digit to an integer and add it to the list
+        int first = (negative || positiveSign) ? 1 : 0; // If negative, start reading from the second character
+        if (first == number.length()) {
+            throw new NumberFormatException("For input string: \"" + number + "\"");
         }
 
-        stripZeros(); // Remove unnecessary leading zeros
+        // long literals that come again (the same constant in every line of a batch) are looked up
+        boolean cached = ResultCache.applies(number.length() / BASE_DIGITS);
+        AInteger hit = cached ? (AInteger) ResultCache.get(ResultCache.Kind.PARSE_INTEGER, number, null) : null;
+        value = hit != null ? hit.value : parseDigits(number, first, number.length(), -1); // already trimmed
+        isNegative = negative && !isZero(); // -0 is just 0
+        if (cached && hit == null)
+            ResultCache.put(ResultCache.Kind.PARSE_INTEGER, number, null, this, number.length() + 4L * value.length);
+        Metrics.record(Metrics.Operation.INTEGER_PARSE, start, value.length);
     }
 
     // Int -> AInteger Constructor
     public AInteger(int number) {
         isNegative = number < 0; // If the number is less than 0, it's negative
-        number = Math.abs(number); // Make the number positive for processing
+        long n = Math.abs((long) number); // Make the number positive for processing (long so MIN_VALUE works)
 
-        if (number == 0) {
-            value.add(0); // If the number is 0, just add 0 to the list
+        if (n < BASE) {
+            value = new int[] { (int) n }; // Fits in a single digit (this also covers 0)
         } else {
-            while (number > 0) {
-                value.add(number % 10000); // Add the last 4 digits of the number to the list
-                number /= 10000; // Remove the last 4 digits from the number
-            }
+            value = new int[] { (int) (n % BASE), (int) (n / BASE) }; // An int never needs more than 2 digits
         }
     }
 
     // Copy constructor
     public AInteger(AInteger other) {
         this.isNegative = other.isNegative; // Copy the sign
-        this.value = new ArrayList<>(other.value); // Copy the list of digits
+        this.value = other.value.clone(); // Copy the digits
+    }
+
+    // Internal constructor, takes ownership of an already trimmed digit array
+    AInteger(int[] value, boolean isNegative) {
+        this.value = value;
+        this.isNegative = isNegative && !(value.length == 1 && value[0] == 0); // there is no -0
+    }
+
+    // long -> AInteger (at most 3 digits), a shared instance for small values (see CACHE)
+    public static AInteger valueOf(long v) {
+        if (v >= CACHE_LOW && v <= CACHE_HIGH)
+            return CACHE[(int) v - CACHE_LOW];
+        if (v > -BASE && v < BASE)
+            return new AInteger(new int[] { (int) Math.abs(v) }, v < 0);
+        // v % BASE is negative for negative v, hence the abs
+        if (v > -(long) BASE * BASE && v < (long) BASE * BASE)
+            return new AInteger(new int[] { (int) Math.abs(v % BASE), (int) Math.abs(v / BASE) }, v < 0);
+        int[] digits = new int[3];
+        int len = 0;
+        boolean negative = v < 0;
+        do {
+            digits[len++] = (int) Math.abs(v % BASE);
+            v /= BASE;
+        } while (v != 0);
+        return new AInteger(len == digits.length ? digits : Arrays.copyOf(digits, len), negative);
     }
 
     // parse method
@@ -66,95 +151,181 @@ public class AInteger {
         return new AInteger(s); // Create a new AInteger from the string
     }
 
-    // Strip starting zeros
-    void stripZeros() {
-        // Remove all leading zeros except the last one
-        while (value.size() > 1 && value.get(value.size() - 1) == 0) {
-            value.remove(value.size() - 1); // Remove the last element if it's 0
+    // Reads the decimal digits s[from..to) (skipping the character at index skip, e.g. a decimal point,
+    // pass -1 for none) into a trimmed base 10^9 digit array.
+    // Since 10^9 is a power of ten every 9 characters are exactly one digit, so this is linear
+    // and works straight on the characters, no substrings or Integer.parseInt.
+    static int[] parseDigits(String s, int from, int to, int skip) {
+        int count = to - from - (skip >= from && skip < to ? 1 : 0);
+        int[] digits = new int[Math.max(1, (count + BASE_DIGITS - 1) / BASE_DIGITS)];
+
+        // Read the number backwards, 9 decimal digits make one digit
+        int k = 0, limb = 0, pow = 1;
+        for (int i = to - 1; i >= from; i--) {
+            if (i == skip)
+                continue;
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                throw new NumberFormatException("For input string: \"" + s + "\"");
+            limb += (c - '0') * pow;
+            pow *= 10;
+            if (pow == BASE) { // digit complete
+                digits[k++] = limb;
+                limb = 0;
+                pow = 1;
+            }
         }
+        if (pow != 1)
+            digits[k] = limb; // the (partial) most significant digit
+
+        return trim(digits, digits.length); // Remove unnecessary leading zeros
+    }
+
+    // the value of a number with at most SMALL digits
+    private long smallValue() {
+        long v = value.length == 1 ? value[0] : value[1] * (long) BASE + value[0];
+        return isNegative ? -v : v;
+    }
+
+    // true if both have at most SMALL digits, so the long fast paths apply
+    private static boolean bothSmall(AInteger a, AInteger b) {
+        return a.value.length <= SMALL && b.value.length <= SMALL;
+    }
 
-        if (value.size() == 1 && value.get(0) == 0)
-            isNegative = false; // If the number is 0, make sure it's not negative
+    // true if the number is 0
+    boolean isZero() {
+        return value.length == 1 && value[0] == 0;
+    }
+
+    // Returns the first len digits of a without leading zeros (at least one digit is kept)
+    static int[] trim(int[] a, int len) {
+        while (len > 1 && a[len - 1] == 0)
+            len--;
+        if (len == 0)
+            return new int[] { 0 };
+        return len == a.length ? a : Arrays.copyOf(a, len);
+    }
+
+    // true if VectorKernels can be loaded, i.e. the Vector API module is there
+    private static boolean vectorKernels() {
+        try {
+            return VectorKernels.usable();
+        } catch (LinkageError e) {
+            return false;
+        }
     }
 
     // Absolute comparison
     static int compareAbsolute(AInteger a, AInteger b) {
+        return compareMagnitude(a.value, b.value);
+    }
+
+    // Same as compareAbsolute, but directly on two trimmed digit arrays
+    static int compareMagnitude(int[] a, int[] b) {
         // Compare the size of the numbers first
-        if (a.value.size() != b.value.size())
-            return Integer.compare(a.value.size(), b.value.size());
+        if (a.length != b.length)
+            return Integer.compare(a.length, b.length);
 
         // If sizes are the same, compare each digit from the most significant to the
         // least
-        for (int i = a.value.size() - 1; i >= 0; i--) {
-            int cmp = Integer.compare(a.value.get(i), b.value.get(i));
-            if (cmp != 0)
-                return cmp; // Return as soon as a difference is found
+        for (int i = a.length - 1; i >= 0; i--) {
+            if (a[i] != b[i])
+                return a[i] < b[i] ? -1 : 1; // Return as soon as a difference is found
         }
         return 0; // If all digits are the same, the numbers are equal
     }
 
-    // Addition for two positive numbers
-    private static AInteger addAbsolute(AInteger a, AInteger b) {
-        AInteger result = new AInteger(); // Create a new AInteger to store the result
-        result.value.clear(); // Clear the default 0 value
+    // |a| + |b| with the given sign
+    private static AInteger addAbsolute(AInteger a, AInteger b, boolean negative) {
+        return new AInteger(addMagnitude(a.value, b.value), negative);
+    }
+
+    // |a| + |b| on digit arrays
+    static int[] addMagnitude(int[] a, int[] b) {
+        if (a.length < b.length) { // make 'a' the longer one
+            int[] t = a;
+            a = b;
+            b = t;
+        }
+        if (VECTOR && b.length >= VECTOR_ADD_THRESHOLD)
+            return VectorKernels.add(a, b);
 
+        int[] result = new int[a.length + 1];
         int carry = 0; // Carry for addition
-        for (int i = 0; i < Math.max(a.value.size(), b.value.size()) || carry != 0; i++) {
-            int aVal = i < a.value.size() ? a.value.get(i) : 0; // Get the digit from 'a' or 0 if out of bounds
-            int bVal = i < b.value.size() ? b.value.get(i) : 0; // Get the digit from 'b' or 0 if out of bounds
-
-            int sum = aVal + bVal + carry; // Add the digits and the carry
-            result.value.add(sum % 10000); // Add the last 4 digits of the sum to the result
-            carry = sum / 10000; // Update the carry
+        int i = 0;
+        for (; i < b.length; i++) {
+            int sum = a[i] + b[i] + carry; // at most 2 * (10^9 - 1) + 1, still fits in an int
+            if (sum >= BASE) {
+                result[i] = sum - BASE;
+                carry = 1;
+            } else {
+                result[i] = sum;
+                carry = 0;
+            }
+        }
+        for (; i < a.length; i++) { // only the carry is left to add now
+            int sum = a[i] + carry;
+            if (sum >= BASE) {
+                result[i] = sum - BASE;
+                carry = 1;
+            } else {
+                result[i] = sum;
+                carry = 0;
+            }
         }
+        result[i] = carry;
 
-        return result; // Return the result
+        return trim(result, result.length);
     }
 
-    // Subtract for two positive numbers
-    private static AInteger subAbsolute(AInteger a, AInteger b) {
-        AInteger result = new AInteger(); // Create a new AInteger to store the result
-        result.value.clear(); // Clear the default 0 value
+    // |a| - |b| with the given sign (0 is never negative), expects |a| >= |b|
+    private static AInteger subAbsolute(AInteger a, AInteger b, boolean negative) {
+        return new AInteger(subMagnitude(a.value, b.value), negative);
+    }
+
+    // |a| - |b| on digit arrays, expects |a| >= |b|
+    static int[] subMagnitude(int[] a, int[] b) {
+        if (VECTOR && b.length >= VECTOR_ADD_THRESHOLD)
+            return VectorKernels.subtract(a, b);
+        int[] result = new int[a.length];
 
         int borrow = 0; // Borrow for subtraction
-        for (int i = 0; i < a.value.size(); i++) {
-            int aVal = a.value.get(i); // Get the digit from 'a'
-            int bVal = i < b.value.size() ? b.value.get(i) : 0; // Get the digit from 'b' or 0 if out of bounds
+        for (int i = 0; i < a.length; i++) {
+            int bVal = i < b.length ? b[i] : 0; // Get the digit from 'b' or 0 if out of bounds
 
-            int diff = aVal - bVal - borrow; // Subtract the digits and the borrow
+            int diff = a[i] - bVal - borrow; // Subtract the digits and the borrow
             if (diff < 0) {
-                diff += 10000; // If the result is negative, borrow from the next digit
+                diff += BASE; // If the result is negative, borrow from the next digit
                 borrow = 1; // Set the borrow flag
             } else {
                 borrow = 0; // Reset the borrow flag
             }
-            result.value.add(diff); // Add the result of the subtraction to the result
+            result[i] = diff;
         }
 
-        result.stripZeros(); // Remove unnecessary leading zeros
-        return result; // Return the result
+        return trim(result, result.length); // Remove unnecessary leading zeros
     }
 
     // Addition for general (either neg or pos) numbers
     public AInteger add(AInteger other) {
+        long start = Metrics.start();
         // If both have same sign -> simply add both
         // If they have different sign -> Just subtract them, and sign will
         // remain same as sign of the larger number.
-        if (isNegative == other.isNegative) {
-            AInteger result = addAbsolute(this, other);
-            result.isNegative = this.isNegative;
-            return result;
+        AInteger result;
+        if (bothSmall(this, other)) {
+            result = valueOf(smallValue() + other.smallValue()); // |sum| < 2 * 10^18, no overflow
+        } else if (isNegative == other.isNegative) {
+            result = addAbsolute(this, other, this.isNegative);
         } else {
             if (compareAbsolute(this, other) >= 0) {
-                AInteger result = subAbsolute(this, other);
-                result.isNegative = this.isNegative;
-                return result;
+                result = subAbsolute(this, other, this.isNegative);
             } else {
-                AInteger result = subAbsolute(other, this);
-                result.isNegative = other.isNegative;
-                return result;
+                result = subAbsolute(other, this, other.isNegative);
             }
         }
+        Metrics.record(Metrics.Operation.INTEGER_ADD, start, Math.max(value.length, other.value.length));
+        return result;
     }
 
     // subtraction for general (either neg or pos) numbers
@@ -167,132 +338,955 @@ public class AInteger {
         // positive
         // -5 - -10 -> have to check sign in this case -> left < right then positive
         // else negative
-        if (isNegative != other.isNegative) {
-            AInteger result = addAbsolute(this, other);
-            result.isNegative = this.isNegative;
-            return result;
+        long start = Metrics.start();
+        AInteger result;
+        if (bothSmall(this, other)) {
+            result = valueOf(smallValue() - other.smallValue());
+        } else if (isNegative != other.isNegative) {
+            result = addAbsolute(this, other, this.isNegative);
         } else {
             if (compareAbsolute(this, other) >= 0) {
-                AInteger result = subAbsolute(this, other);
-                result.isNegative = this.isNegative;
-                return result;
+                result = subAbsolute(this, other, this.isNegative);
             } else {
-                AInteger result = subAbsolute(other, this);
-                result.isNegative = !this.isNegative;
-                return result;
+                result = subAbsolute(other, this, !this.isNegative);
             }
         }
+        Metrics.record(Metrics.Operation.INTEGER_SUBTRACT, start, Math.max(value.length, other.value.length));
+        return result;
+    }
+
+    // -this (shares the digits, they are never changed in place)
+    public AInteger negate() {
+        return new AInteger(value, !isNegative);
+    }
+
+    // |this|
+    public AInteger abs() {
+        return isNegative ? negate() : this;
+    }
+
+    // -1, 0 or 1 depending on the sign
+    public int signum() {
+        return isNegative ? -1 : (isZero() ? 0 : 1);
+    }
+
+    // numeric order
+    @Override
+    public int compareTo(AInteger other) {
+        if (isNegative != other.isNegative)
+            return isNegative ? -1 : 1;
+        int cmp = compareMagnitude(value, other.value);
+        return isNegative ? -cmp : cmp;
+    }
+
+    // same value (the digit arrays are always trimmed, so that is the same digits and sign)
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof AInteger))
+            return false;
+        AInteger other = (AInteger) o;
+        return isNegative == other.isNegative && Arrays.equals(value, other.value);
+    }
+
+    // computed on first use and kept, a racing thread at worst computes the same number again
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Arrays.hashCode(value) * 31 + (isNegative ? 1 : 0);
+            hash = h;
+        }
+        return h;
     }
 
     // Multiplication for general (either neg or pos) numbers
     public AInteger multiply(AInteger other) {
+        long start = Metrics.start();
+        AInteger product = null;
+        if (bothSmall(this, other)) {
+            long a = smallValue(), b = other.smallValue(), p = a * b;
+            if (Math.multiplyHigh(a, b) == p >> 63) // the upper half is just the sign -> no overflow
+                product = valueOf(p);
+        }
+        // Check the sign, if both same positive else negative
+        if (product == null)
+            product = new AInteger(multiplyMagnitude(this.value, other.value), this.isNegative != other.isNegative);
+        Metrics.record(Metrics.Operation.INTEGER_MULTIPLY, start, Math.max(value.length, other.value.length));
+        return product;
+    }
+
+    // |a| * |b| on digit arrays, picks the algorithm depending on the sizes
+    static int[] multiplyMagnitude(int[] a, int[] b) {
+        if (a == b)
+            return squareMagnitude(a); // x * x -> squaring is cheaper
+
+        int small = Math.min(a.length, b.length);
+        int large = Math.max(a.length, b.length);
+        if (small < KARATSUBA_THRESHOLD)
+            return multiplyBasecase(a, b);
+        checkInterrupted();
+        if (large >= 2 * small) // very different sizes -> cut the big one into pieces of the small one's size
+            return a.length > b.length ? multiplyUnbalanced(a, b) : multiplyUnbalanced(b, a);
+        if (small < TOOM3_THRESHOLD)
+            return multiplyKaratsuba(a, b);
+        if (small < NTT_THRESHOLD || !NumberTheoreticTransform.fits(a.length + b.length))
+            return multiplyToom3(a, b); // too big for one transform -> Toom-3 splits it until it fits
+        return NumberTheoreticTransform.multiply(a, b);
+    }
+
+    // The big multiplications and divisions (everything above the school methods, all the recursive
+    // ones call back in here, and the NTT once per prime and per transform level) poll this, so a calculation on a thread that got interrupted, or one
+    // whose Parallelism.runCancellable flag was set (like a timed out server request, also in the
+    // tasks it forked), stops with a CancellationException instead of running to the end.
+    static void checkInterrupted() {
+        if (Thread.currentThread().isInterrupted() || Parallelism.cancelled())
+            throw new CancellationException("Calculation interrupted");
+    }
+
+    // |a|^2 on a digit array
+    static int[] squareMagnitude(int[] a) {
+        if (a.length < KARATSUBA_SQUARE_THRESHOLD)
+            return squareBasecase(a);
+        checkInterrupted();
+        if (a.length < TOOM3_SQUARE_THRESHOLD)
+            return multiplyKaratsuba(a, a);
+        if (a.length < NTT_THRESHOLD || !NumberTheoreticTransform.fits(2 * a.length))
+            return multiplyToom3(a, a);
+        return NumberTheoreticTransform.multiply(a, a);
+    }
+
+    // |a| * |b| the school way, O(n * m)
+    static int[] multiplyBasecase(int[] a, int[] b) {
+        if (VECTOR && Math.min(a.length, b.length) >= VECTOR_MULTIPLY_THRESHOLD)
+            return VectorKernels.multiply(a, b);
         // Simple multiplication as taught in school
-        AInteger result = new AInteger();
-        result.value = new ArrayList<>(Collections.nCopies(this.value.size() + other.value.size(), 0));
-        // Create alist, size ofthe new listis equal tosum of theboth the size
-        result.isNegative = this.isNegative != other.isNegative; // Check the sign,
-        // if both same positive else negative
-
-        // Basic multiplication as taught in school
-        for (int i = 0; i < this.value.size(); i++) {
+        // size of the result is at most the sum of both the sizes
+        int[] result = new int[a.length + b.length];
+
+        for (int i = 0; i < a.length; i++) {
+            long ai = a[i];
+            if (ai == 0)
+                continue; // nothing to add for a zero digit
             long carry = 0; // variable to accomodate the carry while multiplication
-            for (int j = 0; j < other.value.size() || carry != 0; j++) {
-                long curr = result.value.get(i + j) + carry;
-                if (j < other.value.size())
-                    curr += (long) this.value.get(i) * other.value.get(j);
+            for (int j = 0; j < b.length; j++) {
+                // (10^9 - 1)^2 + 2 * (10^9 - 1) < 10^18, so this never overflows a long
+                long curr = result[i + j] + ai * b[j] + carry;
+                result[i + j] = (int) (curr % BASE);
+                carry = curr / BASE;
+            }
+            result[i + b.length] = (int) carry; // this slot has not been touched yet
+        }
+
+        return trim(result, result.length);
+    }
 
-                result.value.set(i + j, (int) (curr % 10000));
-                carry = curr / 10000;
+    // |a|^2 the school way, every cross product a[i] * a[j] is computed only once and then doubled
+    static int[] squareBasecase(int[] a) {
+        if (VECTOR && a.length >= VECTOR_MULTIPLY_THRESHOLD)
+            return VectorKernels.multiply(a, a); // the SIMD rows beat computing half the products
+        int n = a.length;
+        int[] result = new int[2 * n];
+
+        // sum of a[i] * a[j] for i < j
+        for (int i = 0; i < n; i++) {
+            long ai = a[i];
+            if (ai == 0)
+                continue;
+            long carry = 0;
+            for (int j = i + 1; j < n; j++) {
+                long curr = result[i + j] + ai * a[j] + carry;
+                result[i + j] = (int) (curr % BASE);
+                carry = curr / BASE;
             }
+            result[i + n] = (int) carry; // this slot has not been touched yet
         }
 
-        result.stripZeros();
+        // double it, 2 * (10^9 - 1) + 1 still fits in an int
+        int carry = 0;
+        for (int k = 0; k < result.length; k++) {
+            int twice = 2 * result[k] + carry;
+            if (twice >= BASE) {
+                result[k] = twice - BASE;
+                carry = 1;
+            } else {
+                result[k] = twice;
+                carry = 0;
+            }
+        }
+
+        // and add the squares a[i]^2 on the diagonal
+        long c = 0;
+        for (int i = 0; i < n; i++) {
+            long curr = result[2 * i] + (long) a[i] * a[i] + c;
+            result[2 * i] = (int) (curr % BASE);
+            curr = result[2 * i + 1] + curr / BASE;
+            result[2 * i + 1] = (int) (curr % BASE);
+            c = curr / BASE;
+        }
+
+        return trim(result, result.length);
+    }
+
+    // big * small where big is at least twice as long: multiply small with every
+    // small-sized piece of big, so the pieces are balanced for Karatsuba / Toom-3
+    private static int[] multiplyUnbalanced(int[] big, int[] small) {
+        int pieces = (big.length + small.length - 1) / small.length;
+        int[][] xs = new int[pieces][], ys = new int[pieces][];
+        for (int i = 0; i < pieces; i++) {
+            int off = i * small.length, end = Math.min(big.length, off + small.length);
+            xs[i] = trim(Arrays.copyOfRange(big, off, end), end - off);
+            ys[i] = small;
+        }
+        int[][] products = multiplyAll(xs, ys, small.length);
+
+        int[] result = new int[big.length + small.length];
+        for (int i = 0; i < pieces; i++)
+            addShifted(result, products[i], i * small.length);
+        return trim(result, result.length);
+    }
+
+    // Karatsuba: a = ah * B^h + al, b = bh * B^h + bl
+    // a * b = ah*bh * B^2h + ((ah+al)(bh+bl) - ah*bh - al*bl) * B^h + al*bl -> 3 multiplications instead of 4
+    // a == b squares, so the three products are squares too
+    private static int[] multiplyKaratsuba(int[] a, int[] b) {
+        boolean square = a == b;
+        int half = (Math.max(a.length, b.length) + 1) / 2;
+
+        int[] al = lowerDigits(a, half), ah = upperDigits(a, half);
+        int[] bl = square ? al : lowerDigits(b, half), bh = square ? ah : upperDigits(b, half);
+        int[] sa = addMagnitude(ah, al), sb = square ? sa : addMagnitude(bh, bl);
+        int[][] p = multiplyAll(new int[][] { ah, al, sa }, new int[][] { bh, bl, sb }, half);
+        int[] middle = subMagnitude(subMagnitude(p[2], p[0]), p[1]);
+
+        int[] result = new int[a.length + b.length + 1];
+        addShifted(result, p[1], 0);
+        addShifted(result, middle, half);
+        addShifted(result, p[0], 2 * half);
+        return trim(result, result.length);
+    }
+
+    // Toom-Cook 3: split both numbers into 3 pieces, evaluate at 0, 1, -1, 2 and infinity
+    // and interpolate back -> 5 multiplications of a third of the size instead of 9.
+    // Intermediate values can get negative, so this one works with signed AIntegers.
+    // (evaluation and interpolation sequence by Bodrato, same as java.math.BigInteger)
+    private static int[] multiplyToom3(int[] a, int[] b) {
+        boolean square = a == b;
+        int k = (Math.max(a.length, b.length) + 2) / 3;
+
+        AInteger a0 = toomSlice(a, k, 0), a1 = toomSlice(a, k, 1), a2 = toomSlice(a, k, 2);
+        AInteger b0 = square ? a0 : toomSlice(b, k, 0), b1 = square ? a1 : toomSlice(b, k, 1);
+        AInteger b2 = square ? a2 : toomSlice(b, k, 2);
+
+        AInteger v0, v1, v2, vm1, vinf, t1, t2, tm1, da1, db1, am1, bm1;
+
+        // evaluation, for a square the b side is the same object so the products are squares
+        da1 = a2.add(a0);
+        db1 = square ? da1 : b2.add(b0);
+        am1 = da1.subtract(a1);
+        bm1 = square ? am1 : db1.subtract(b1);
+        da1 = da1.add(a1);
+        db1 = square ? da1 : db1.add(b1);
+        t1 = da1.add(a2);
+        t1 = t1.add(t1).subtract(a0);
+        t2 = square ? t1 : db1.add(b2);
+        t2 = square ? t1 : t2.add(t2).subtract(b0);
+
+        AInteger[] v = multiplyAll(new AInteger[] { a0, am1, da1, t1, a2 }, new AInteger[] { b0, bm1, db1, t2, b2 }, k);
+        v0 = v[0];
+        vm1 = v[1];
+        v1 = v[2];
+        v2 = v[3];
+        vinf = v[4];
+
+        // interpolation, every division here is exact
+        t2 = v2.subtract(vm1).divideExactBySmall(3);
+        tm1 = v1.subtract(vm1).divideExactBySmall(2);
+        t1 = v1.subtract(v0);
+        t2 = t2.subtract(t1).divideExactBySmall(2);
+        t1 = t1.subtract(tm1).subtract(vinf);
+        t2 = t2.subtract(vinf.add(vinf));
+        tm1 = tm1.subtract(t2);
+
+        // result = vinf * B^4k + t2 * B^3k + t1 * B^2k + tm1 * B^k + v0
+        AInteger result = vinf.shiftLimbs(k).add(t2).shiftLimbs(k).add(t1).shiftLimbs(k).add(tm1).shiftLimbs(k).add(v0);
+        return result.value;
+    }
+
+    // xs[i] * ys[i] for every i, as fork/join tasks when the pieces are big enough (see Parallelism).
+    // xs[i] == ys[i] squares like multiplyMagnitude does.
+    private static int[][] multiplyAll(int[][] xs, int[][] ys, int size) {
+        int[][] products = new int[xs.length][];
+        if (Parallelism.enabled(size)) {
+            List<Callable<int[]>> tasks = new ArrayList<>(xs.length);
+            for (int i = 0; i < xs.length; i++) {
+                int[] x = xs[i], y = ys[i];
+                tasks.add(() -> multiplyMagnitude(x, y));
+            }
+            return Parallelism.invokeAll(tasks).toArray(products);
+        }
+        for (int i = 0; i < xs.length; i++)
+            products[i] = multiplyMagnitude(xs[i], ys[i]);
+        return products;
+    }
+
+    // signed version for Toom-3
+    private static AInteger[] multiplyAll(AInteger[] xs, AInteger[] ys, int size) {
+        int[][] xv = new int[xs.length][], yv = new int[ys.length][];
+        for (int i = 0; i < xs.length; i++) {
+            xv[i] = xs[i].value;
+            yv[i] = xs[i] == ys[i] ? xv[i] : ys[i].value;
+        }
+        int[][] products = multiplyAll(xv, yv, size);
+        AInteger[] result = new AInteger[xs.length];
+        for (int i = 0; i < xs.length; i++)
+            result[i] = new AInteger(products[i], xs[i].isNegative != ys[i].isNegative);
         return result;
     }
 
+    // index-th piece of k digits of a (the last piece gets whatever is left)
+    private static AInteger toomSlice(int[] a, int k, int index) {
+        int from = Math.min(a.length, index * k);
+        int to = index == 2 ? a.length : Math.min(a.length, from + k);
+        if (from >= to)
+            return ZERO;
+        return new AInteger(trim(Arrays.copyOfRange(a, from, to), to - from), false);
+    }
+
+    // lowest n digits of a
+    static int[] lowerDigits(int[] a, int n) {
+        if (a.length <= n)
+            return a;
+        return trim(Arrays.copyOf(a, n), n);
+    }
+
+    // a without its lowest n digits
+    static int[] upperDigits(int[] a, int n) {
+        if (a.length <= n)
+            return new int[] { 0 };
+        return Arrays.copyOfRange(a, n, a.length); // already trimmed, the top digit is not 0
+    }
+
+    // result += x * B^offset, result must be big enough to hold the sum
+    static void addShifted(int[] result, int[] x, int offset) {
+        int carry = 0;
+        int i = 0;
+        for (; i < x.length; i++) {
+            int sum = result[offset + i] + x[i] + carry;
+            if (sum >= BASE) {
+                result[offset + i] = sum - BASE;
+                carry = 1;
+            } else {
+                result[offset + i] = sum;
+                carry = 0;
+            }
+        }
+        for (int k = offset + i; carry != 0; k++) { // carry ripples up
+            if (result[k] == BASE - 1) {
+                result[k] = 0;
+            } else {
+                result[k]++;
+                carry = 0;
+            }
+        }
+    }
+
+    // this * B^n, i.e. n zero digits appended at the low end
+    AInteger shiftLimbs(int n) {
+        if (n == 0 || isZero())
+            return this;
+        int[] shifted = new int[value.length + n];
+        System.arraycopy(value, 0, shifted, n, value.length);
+        return new AInteger(shifted, isNegative);
+    }
+
+    // this * 10^n for n >= 0: n / 9 whole digits are just a shift, the remaining 10^(n % 9)
+    // is a single digit multiply done in the same pass
+    AInteger scaleByPowerOfTen(int n) {
+        if (n == 0 || isZero())
+            return this;
+        int limbs = n / BASE_DIGITS;
+        long m = POW10[n % BASE_DIGITS];
+        if (m == 1)
+            return shiftLimbs(limbs);
+
+        long start = Metrics.start();
+        int[] result = new int[value.length + limbs + 1];
+        long carry = 0;
+        for (int i = 0; i < value.length; i++) {
+            long cur = value[i] * m + carry;
+            result[limbs + i] = (int) (cur % BASE);
+            carry = cur / BASE;
+        }
+        result[limbs + value.length] = (int) carry;
+        Metrics.record(Metrics.Operation.INTEGER_POW10, start, value.length);
+        return new AInteger(trim(result, result.length), isNegative);
+    }
+
+    // number of decimal zeros at the end of this (0 for the number 0)
+    int trailingDecimalZeros() {
+        if (isZero())
+            return 0;
+        int i = 0;
+        while (value[i] == 0) // whole zero digits, the top digit is never 0
+            i++;
+        int zeros = i * BASE_DIGITS;
+        for (int low = value[i]; low % 10 == 0; low /= 10)
+            zeros++;
+        return zeros;
+    }
+
+    // this / 10^n for n >= 0 rounded towards zero (i.e. the lowest n decimal digits are dropped):
+    // drop n / 9 digits and divide the rest by 10^(n % 9) in the same pass
+    // (every new digit is made of two neighbouring old ones)
+    AInteger divideByPowerOfTen(int n) {
+        if (n == 0)
+            return this;
+        int limbs = n / BASE_DIGITS;
+        if (limbs >= value.length)
+            return ZERO;
+        long start = Metrics.start();
+        int d = POW10[n % BASE_DIGITS];
+        int[] result = new int[value.length - limbs];
+        if (d == 1) {
+            System.arraycopy(value, limbs, result, 0, result.length);
+        } else {
+            int up = BASE / d; // a remainder r of the digit above is worth r * BASE / d here
+            for (int i = 0; i < result.length; i++) {
+                int above = limbs + i + 1 < value.length ? value[limbs + i + 1] % d : 0;
+                result[i] = value[limbs + i] / d + above * up;
+            }
+        }
+        Metrics.record(Metrics.Operation.INTEGER_POW10, start, value.length);
+        return new AInteger(trim(result, result.length), isNegative);
+    }
+
+    // decimal digit at position pos, 0 is the units digit
+    int decimalDigit(int pos) {
+        int limb = pos / BASE_DIGITS;
+        if (limb >= value.length)
+            return 0;
+        return value[limb] / POW10[pos % BASE_DIGITS] % 10;
+    }
+
+    // true if any of the lowest n decimal digits is not 0
+    boolean hasNonZeroDecimals(int n) {
+        int limbs = Math.min(n / BASE_DIGITS, value.length);
+        for (int i = 0; i < limbs; i++) {
+            if (value[i] != 0)
+                return true;
+        }
+        if (limbs < value.length && n % BASE_DIGITS != 0)
+            return value[limbs] % POW10[n % BASE_DIGITS] != 0;
+        return false;
+    }
+
+    // this / d for a small positive d that is known to divide this exactly
+    private AInteger divideExactBySmall(int d) {
+        return new AInteger(divideBySmall(value, d)[0], isNegative);
+    }
+
     // Integer division for general (either neg or pos) numbers
-    // division: integer quotient only, no remainder, no floats
+    // division: integer quotient only (rounded towards zero), no floats
     public AInteger divide(AInteger other) {
+        if (bothSmall(this, other) && !other.isZero()) {
+            long start = Metrics.start();
+            AInteger q = valueOf(smallValue() / other.smallValue()); // also rounds towards zero
+            Metrics.record(Metrics.Operation.INTEGER_DIVIDE, start, value.length);
+            return q;
+        }
+        return divideAndRemainder(other)[0];
+    }
+
+    // Returns {quotient, remainder} with this = quotient * other + remainder,
+    // the quotient is rounded towards zero, so the remainder has the sign of this
+    public AInteger[] divideAndRemainder(AInteger other) {
         // don't allow division by zero
-        if (other.value.size() == 1 && other.value.get(0) == 0) {
+        if (other.isZero()) {
             throw new ArithmeticException("Division by zero");
         }
 
+        long start = Metrics.start();
+        if (bothSmall(this, other)) {
+            long a = smallValue(), b = other.smallValue();
+            AInteger[] qr = { valueOf(a / b), valueOf(a % b) }; // same signs as below
+            Metrics.record(Metrics.Operation.INTEGER_DIVIDE, start, value.length);
+            return qr;
+        }
+
+        // big divisions that come again are looked up (see ResultCache), a copy of the array is
+        // handed out since the caller may write into it
+        boolean cached = other.value.length > 1 && ResultCache.applies(value.length);
+        if (cached) {
+            AInteger[] hit = (AInteger[]) ResultCache.get(ResultCache.Kind.DIVIDE, this, other);
+            if (hit != null) {
+                Metrics.record(Metrics.Operation.INTEGER_DIVIDE, start, this.value.length);
+                return hit.clone();
+            }
+        }
+
         // work with absolute values, fix sign at the end
-        AInteger dividend = new AInteger(this);
-        dividend.isNegative = false;
-        AInteger divisor = new AInteger(other);
-        divisor.isNegative = false;
+        int[][] qr = divideMagnitude(this.value, other.value);
+        Metrics.record(Metrics.Operation.INTEGER_DIVIDE, start, this.value.length);
+
+        // sign of quotient is given byu -> both same then pos else neg
+        AInteger[] result = { new AInteger(qr[0], this.isNegative != other.isNegative),
+                new AInteger(qr[1], this.isNegative) };
+        if (cached)
+            ResultCache.put(ResultCache.Kind.DIVIDE, this, other, result.clone(),
+                    4L * (value.length + other.value.length + qr[0].length + qr[1].length));
+        return result;
+    }
+
+    // this mod m, always in 0..m-1 (unlike the remainder of divideAndRemainder), m has to be positive
+    public AInteger mod(AInteger m) {
+        if (m.isNegative || m.isZero()) {
+            throw new ArithmeticException("Modulus not positive");
+        }
+        if (bothSmall(this, m)) {
+            long r = smallValue() % m.smallValue();
+            return valueOf(r < 0 ? r + m.smallValue() : r);
+        }
+        AInteger r = new AInteger(divideMagnitude(this.value, m.value)[1], this.isNegative);
+        return r.isNegative ? r.add(m) : r;
+    }
+
+    // this^exponent by repeated squaring, exponent >= 0
+    public AInteger pow(int exponent) {
+        if (exponent < 0)
+            throw new ArithmeticException("Negative exponent");
+        if (exponent == 0)
+            return ONE;
+
+        // decimal zeros at the end don't need multiplying: (x * 10^z)^e = x^e * 10^(z * e)
+        int zeros = trailingDecimalZeros();
+        long shift = (long) zeros * exponent;
+        if (shift > Integer.MAX_VALUE)
+            throw new ArithmeticException("Result too large");
+        int[] base = zeros == 0 ? value : divideByPowerOfTen(zeros).value;
+
+        boolean cached = ResultCache.applies((long) value.length * exponent);
+        if (cached) {
+            AInteger hit = (AInteger) ResultCache.get(ResultCache.Kind.POW, this, exponent);
+            if (hit != null)
+                return hit;
+        }
+
+        // left to right over the bits of the exponent
+        long start = Metrics.start();
+        int[] result = base;
+        for (int bit = Integer.highestOneBit(exponent) >> 1; bit > 0; bit >>= 1) {
+            result = multiplyMagnitude(result, result);
+            if ((exponent & bit) != 0)
+                result = multiplyMagnitude(result, base);
+        }
+        Metrics.record(Metrics.Operation.INTEGER_POW, start, result.length);
+        AInteger power = new AInteger(result, isNegative && (exponent & 1) == 1).scaleByPowerOfTen((int) shift);
+        if (cached)
+            ResultCache.put(ResultCache.Kind.POW, this, exponent, power, 4L * (value.length + power.value.length));
+        return power;
+    }
+
+    // floor(sqrt(this)), ArithmeticException for negative numbers
+    public AInteger sqrt() {
+        return root(2);
+    }
+
+    // {s, r} with s = floor(sqrt(this)) and r = this - s^2 (0 <= r <= 2s)
+    public AInteger[] sqrtAndRemainder() {
+        return rootAndRemainder(2);
+    }
+
+    // n-th root rounded towards zero, negative numbers only have odd roots
+    public AInteger root(int n) {
+        return rootAndRemainder(n)[0];
+    }
+
+    // {s, r} with s = root(n) and r = this - s^n (r has the sign of this, like a division remainder)
+    public AInteger[] rootAndRemainder(int n) {
+        if (n <= 0)
+            throw new ArithmeticException("Root of non-positive degree");
+        if (isNegative && n % 2 == 0)
+            throw new ArithmeticException("Even root of negative number");
+        int[][] sp = rootMagnitude(value, n);
+        return new AInteger[] { new AInteger(sp[0], isNegative), new AInteger(subMagnitude(value, sp[1]), isNegative) };
+    }
+
+    // {s, s^n} for s = floor(a^(1/n)), by Newton iteration with precision doubling: the root of the top part of a
+    // (with about half the digits of the result) is computed recursively, scaled up it's an upper
+    // bound that is already correct to half the digits, and a single Newton step
+    //   x -> ((n - 1) x + a / x^(n-1)) / n
+    // doubles that. So the last level does one division and one n-th power at full size and
+    // all the levels below together cost about as much again.
+    static int[][] rootMagnitude(int[] a, int n) {
+        if (n == 1 || (a.length == 1 && a[0] <= 1))
+            return new int[][] { a, a };
+        int digits = decimalLength(a);
+        if ((long) n >= 4L * digits) // 2^n > 16^digits > a
+            return new int[][] { { 1 }, { 1 } };
+        if (a.length <= 2) { // the root of a number below 10^18 is a single digit
+            int[] small = { (int) longRoot(a[0] + (a.length == 2 ? a[1] * (long) BASE : 0), n) };
+            return new int[][] { small, new AInteger(small, false).pow(n).value };
+        }
+
+        // the root has about rootLen digits, the top part is rootLen - k of them. Newton roughly
+        // squares the error of the guess, which is at most B^k, so 2k has to stay below rootLen - 2
+        int rootLen = (a.length + n - 1) / n;
+        int k = (rootLen - 3) / 2;
+        int[] x;
+        if (k < 1) {
+            x = rootNewton(a, n, new AInteger(1).scaleByPowerOfTen((digits + n - 1) / n).value);
+        } else {
+            int[] top = rootMagnitude(upperDigits(a, n * k), n)[0];
+            x = new AInteger(addMagnitude(top, new int[] { 1 }), false).shiftLimbs(k).value;
+            x = newtonRootStep(a, x, n);
+        }
+        // the step lands on the root or a little above it (never below)
+        int[] power = new AInteger(x, false).pow(n).value;
+        while (compareMagnitude(power, a) > 0) {
+            x = subMagnitude(x, new int[] { 1 });
+            power = new AInteger(x, false).pow(n).value;
+        }
+        return new int[][] { x, power };
+    }
+
+    // Newton from an upper bound x until it stops going down, for small a
+    private static int[] rootNewton(int[] a, int n, int[] x) {
+        while (true) {
+            int[] next = newtonRootStep(a, x, n);
+            if (compareMagnitude(next, x) >= 0)
+                return x;
+            x = next;
+        }
+    }
+
+    // ((n - 1) x + a / x^(n-1)) / n, at least floor(a^(1/n)) for any x > 0
+    private static int[] newtonRootStep(int[] a, int[] x, int n) {
+        int[] power = n == 2 ? x : new AInteger(x, false).pow(n - 1).value;
+        int[] sum = addMagnitude(n == 2 ? x : multiplyMagnitude(x, new AInteger(n - 1).value), divideMagnitude(a, power)[0]);
+        return n == 2 ? divideBySmall(sum, 2)[0] : divideMagnitude(sum, new AInteger(n).value)[0];
+    }
+
+    // floor(v^(1/n)) for 0 <= v < 10^18, 2 <= n < 64
+    private static long longRoot(long v, int n) {
+        long r = (long) Math.pow(v, 1.0 / n);
+        while (r > 0 && powerExceeds(r, n, v))
+            r--;
+        while (!powerExceeds(r + 1, n, v))
+            r++;
+        return r;
+    }
+
+    // x^n > v, without overflowing
+    private static boolean powerExceeds(long x, int n, long v) {
+        long p = 1;
+        for (int i = 0; i < n; i++) {
+            if (p > v / x)
+                return true;
+            p *= x;
+        }
+        return p > v;
+    }
+
+    // this^exponent mod m, always in 0..m-1, m > 0 (a negative exponent needs this to be invertible mod m).
+    // Makes a ModularReducer for m every time, keep one around when using the same m a lot.
+    public AInteger modPow(AInteger exponent, AInteger m) {
+        return ModularReducer.of(m).pow(this, exponent);
+    }
+
+    // greatest common divisor of |this| and |other|, gcd(0, 0) = 0 (see Gcd)
+    public AInteger gcd(AInteger other) {
+        return new AInteger(Gcd.gcd(this.value, other.value), false);
+    }
+
+    // {g, x, y} with this * x + other * y = g = gcd(this, other)
+    public AInteger[] extendedGcd(AInteger other) {
+        return Gcd.extended(this, other);
+    }
 
+    // x in 0..m-1 with this * x = 1 mod m, ArithmeticException if there is none
+    public AInteger modInverse(AInteger m) {
+        if (m.isNegative || m.isZero())
+            throw new ArithmeticException("Modulus not positive");
+        AInteger[] gxy = Gcd.extended(this.mod(m), m);
+        if (!(gxy[0].value.length == 1 && gxy[0].value[0] == 1))
+            throw new ArithmeticException("Not invertible");
+        return gxy[1].mod(m);
+    }
+
+    // |a| / |b| -> {quotient, remainder} on digit arrays, b is not 0
+    static int[][] divideMagnitude(int[] a, int[] b) {
         // if dividend < divisor, quotient is 0
-        if (compareAbsolute(dividend, divisor) < 0) {
-            return new AInteger(0);
-        }
-
-        List<Integer> quotMsf = new ArrayList<>(); // hold quotient digits MS-first
-        AInteger current = new AInteger();
-        current.value.clear(); // start with zero
-
-        // long division: bring down digits from highest to lowest
-        for (int i = dividend.value.size() - 1; i >= 0; i--) {
-            // shift current left by one digit, then add next digit
-            current.value.add(0, dividend.value.get(i));
-            current.stripZeros();
-
-            // find the largest x in 0..9999 so that divisor * x <= current
-            int low = 0, high = 9999, best = 0;
-            while (low <= high) {
-                int mid = (low + high) >>> 1;
-                AInteger prod = divisor.multiply(new AInteger(mid));
-                if (compareAbsolute(prod, current) <= 0) {
-                    best = mid;
-                    low = mid + 1;
+        if (compareMagnitude(a, b) < 0)
+            return new int[][] { { 0 }, a };
+        if (b.length == 1)
+            return divideBySmall(a, b[0]);
+        checkInterrupted();
+        if (b.length < BURNIKEL_ZIEGLER_THRESHOLD || a.length - b.length < BURNIKEL_ZIEGLER_OFFSET)
+            return divideKnuth(a, b);
+        return divideBurnikelZiegler(a, b);
+    }
+
+    // |a| / d for a single digit d, the remainder is returned as a one digit array
+    static int[][] divideBySmall(int[] a, int d) {
+        int[] q = new int[a.length];
+        long rem = 0;
+        for (int i = a.length - 1; i >= 0; i--) {
+            long cur = a[i] + rem * BASE;
+            q[i] = (int) (cur / d);
+            rem = cur % d;
+        }
+        return new int[][] { trim(q, q.length), { (int) rem } };
+    }
+
+    // a * d for a single digit d, the result has exactly a.length + 1 digits (not trimmed)
+    private static int[] multiplyBySmall(int[] a, int d) {
+        int[] result = new int[a.length + 1];
+        long carry = 0;
+        for (int i = 0; i < a.length; i++) {
+            long cur = (long) a[i] * d + carry;
+            result[i] = (int) (cur % BASE);
+            carry = cur / BASE;
+        }
+        result[a.length] = (int) carry;
+        return result;
+    }
+
+    // Knuth's Algorithm D (TAOCP vol. 2, 4.3.1), school long division where every quotient
+    // digit is guessed from the top two digits of the remainder and the top digit of the divisor.
+    // After normalizing (divisor's top digit >= BASE / 2) the guess is at most 2 too big,
+    // the second divisor digit fixes almost all of those and an add back handles the rest.
+    // O((a.length - b.length) * b.length), b has at least 2 digits
+    private static int[][] divideKnuth(int[] a, int[] b) {
+        int n = b.length;
+        int m = a.length - n;
+
+        // normalize: scale both numbers so the top digit of the divisor is at least BASE / 2
+        int d = BASE / (b[n - 1] + 1);
+        int[] v = d == 1 ? b : Arrays.copyOf(multiplyBySmall(b, d), n); // the extra digit is 0
+        int[] u = multiplyBySmall(a, d); // one digit longer than a
+        long vTop = v[n - 1], vNext = v[n - 2];
+
+        int[] q = new int[m + 1];
+        for (int j = m; j >= 0; j--) {
+            // guess the quotient digit from the top two digits
+            long num = (long) u[j + n] * BASE + u[j + n - 1];
+            long qhat = num / vTop;
+            long rhat = num % vTop;
+            while (qhat >= BASE || qhat * vNext > rhat * BASE + u[j + n - 2]) {
+                qhat--;
+                rhat += vTop;
+                if (rhat >= BASE)
+                    break;
+            }
+
+            // u[j .. j+n] -= qhat * v
+            long carry = 0;
+            int borrow = 0;
+            for (int i = 0; i < n; i++) {
+                long p = qhat * v[i] + carry;
+                carry = p / BASE;
+                long t = u[i + j] - p % BASE - borrow;
+                if (t < 0) {
+                    t += BASE;
+                    borrow = 1;
                 } else {
-                    high = mid - 1;
+                    borrow = 0;
                 }
+                u[i + j] = (int) t;
             }
-            quotMsf.add(best);
+            long top = u[j + n] - carry - borrow;
 
-            // subtract divisor * best from current
-            current = current.subtract(divisor.multiply(new AInteger(best)));
+            if (top < 0) {
+                // guess was still one too big (rare), add the divisor back
+                qhat--;
+                int c = 0;
+                for (int i = 0; i < n; i++) {
+                    int sum = u[i + j] + v[i] + c;
+                    if (sum >= BASE) {
+                        u[i + j] = sum - BASE;
+                        c = 1;
+                    } else {
+                        u[i + j] = sum;
+                        c = 0;
+                    }
+                }
+                top += c; // the carry out cancels the borrow, top is 0 again
+            }
+            u[j + n] = (int) top;
+            q[j] = (int) qhat;
         }
 
-        // convert MS-first to our storage (LS-first)
-        Collections.reverse(quotMsf);
-        AInteger result = new AInteger();
-        result.value = quotMsf;
-        result.stripZeros();
+        // the remainder is in the low n digits of u, undo the normalization
+        int[] r = trim(u, n);
+        if (d != 1)
+            r = divideBySmall(r, d)[0];
+        return new int[][] { trim(q, q.length), r };
+    }
 
-        // sign of quotient is given byu -> both same then pos else neg
-        result.isNegative = (this.isNegative != other.isNegative);
-        return result;
+    // Burnikel-Ziegler recursive division ("Fast Recursive Division", 1998), O(M(n) log n) so it
+    // profits from Karatsuba / Toom-3 / NTT. The dividend is cut into pieces of the divisor's
+    // size and every piece is a 2n by n division, which recurses into two 3n/2 by n divisions.
+    private static int[][] divideBurnikelZiegler(int[] a, int[] b) {
+        // normalize like in Knuth D, the top digit of every (upper part of the) divisor is >= BASE / 2
+        int d = BASE / (b[b.length - 1] + 1);
+        int[] an = trim(multiplyBySmall(a, d), a.length + 1);
+        int[] bn = trim(multiplyBySmall(b, d), b.length + 1);
+        int n = bn.length;
+        AInteger divisor = new AInteger(bn, false);
+
+        int pieces = (an.length + n - 1) / n;
+        int[] q = new int[pieces * n];
+        AInteger r = new AInteger();
+        for (int i = pieces - 1; i >= 0; i--) {
+            int from = i * n;
+            int to = Math.min(an.length, from + n);
+            AInteger piece = new AInteger(trim(Arrays.copyOfRange(an, from, to), to - from), false);
+            AInteger[] qr = divide2n1n(r.shiftLimbs(n).add(piece), divisor, n);
+            System.arraycopy(qr[0].value, 0, q, from, qr[0].value.length); // every quotient piece has <= n digits
+            r = qr[1];
+        }
+
+        int[] rem = d == 1 ? r.value : divideBySmall(r.value, d)[0];
+        return new int[][] { trim(q, q.length), rem };
+    }
+
+    // a / b where b has n digits (normalized) and a < b * B^n
+    private static AInteger[] divide2n1n(AInteger a, AInteger b, int n) {
+        if (n < BURNIKEL_ZIEGLER_THRESHOLD) {
+            int[][] qr = divideMagnitude(a.value, b.value);
+            return new AInteger[] { new AInteger(qr[0], false), new AInteger(qr[1], false) };
+        }
+
+        boolean pad = (n & 1) == 1; // the split needs an even n, so multiply both by B
+        if (pad) {
+            a = a.shiftLimbs(1);
+            b = b.shiftLimbs(1);
+            n++;
+        }
+        int half = n / 2;
+        AInteger b1 = b.upperLimbs(half);
+        AInteger b2 = b.lowerLimbs(half);
+
+        AInteger[] qr1 = divide3n2n(a.upperLimbs(n), a.upperLimbs(half).lowerLimbs(half), b, b1, b2, half);
+        AInteger[] qr2 = divide3n2n(qr1[1], a.lowerLimbs(half), b, b1, b2, half);
+
+        AInteger q = qr1[0].shiftLimbs(half).add(qr2[0]);
+        AInteger r = pad ? qr2[1].upperLimbs(1) : qr2[1]; // the remainder was scaled by B too
+        return new AInteger[] { q, r };
+    }
+
+    // (a12 * B^n + a3) / b with b = b1 * B^n + b2 (2n digits, normalized), a12 < b * B^n
+    private static AInteger[] divide3n2n(AInteger a12, AInteger a3, AInteger b, AInteger b1, AInteger b2, int n) {
+        AInteger q, r;
+        if (compareAbsolute(a12.upperLimbs(n), b1) == 0) {
+            // the estimate would overflow, B^n - 1 is at most 2 too big here
+            int[] nines = new int[n];
+            Arrays.fill(nines, BASE - 1);
+            q = new AInteger(nines, false);
+            r = a12.subtract(b1.shiftLimbs(n)).add(b1);
+        } else {
+            AInteger[] qr = divide2n1n(a12, b1, n);
+            q = qr[0];
+            r = qr[1];
+        }
+
+        // correct the estimate that ignored b2, just like the qhat correction in Knuth D
+        r = r.shiftLimbs(n).add(a3).subtract(q.multiply(b2));
+        AInteger one = new AInteger(1);
+        while (r.isNegative) {
+            q = q.subtract(one);
+            r = r.add(b);
+        }
+        return new AInteger[] { q, r };
+    }
+
+    // lowest n digits of this (as a positive number)
+    private AInteger lowerLimbs(int n) {
+        return new AInteger(lowerDigits(value, n), false);
+    }
+
+    // this / B^n (as a positive number)
+    private AInteger upperLimbs(int n) {
+        return new AInteger(upperDigits(value, n), false);
     }
 
     // override toString() method to print the number properly
     @Override
     public String toString() {
-        if (value.size() == 1 && value.get(0) == 0) { // if value=0 return 0
-            return "0";
-        }
-        if (value.isEmpty())
-            return "0"; // Empty number -> that means zero , just return zero
+        // The characters are written straight into a byte array (ASCII), no per digit formatting
+        long start = Metrics.start();
+        int length = decimalLength(value);
+        int sign = isNegative ? 1 : 0;
+        byte[] out = new byte[sign + length];
+        if (isNegative)
+            out[0] = '-'; // If negative, append '-' while printing
+        writeDigits(value, out, sign);
+        String s = new String(out, StandardCharsets.ISO_8859_1);
+        Metrics.record(Metrics.Operation.INTEGER_TO_STRING, start, value.length);
+        return s;
+    }
+
+    // Writes the same characters as toString() to out, a few KB at a time, so printing a number
+    // with millions of digits never needs a String (or byte array) of its full length.
+    // out is not flushed; a Writer or StringBuilder is filled straight from the digit buffer.
+    public void writeTo(Appendable out) throws IOException {
+        write(new DigitWriter(out));
+    }
 
-        StringBuilder sb = new StringBuilder();
+    // Same as ASCII bytes
+    public void writeTo(OutputStream out) throws IOException {
+        write(new DigitWriter(out));
+    }
+
+    // A PrintStream (System.out) is both of the above, its bytes are the cheaper way in
+    public void writeTo(PrintStream out) throws IOException {
+        write(new DigitWriter((OutputStream) out));
+    }
+
+    private void write(DigitWriter out) throws IOException {
+        long start = Metrics.start();
         if (isNegative)
-            sb.append('-'); // If negative, append '-' while printing
+            out.put('-');
+        out.digits(value, decimalLength(value) - 1, 0);
+        out.flush();
+        Metrics.record(Metrics.Operation.INTEGER_TO_STRING, start, value.length);
+    }
 
-        sb.append(value.get(value.size() - 1)); // Most Significant digit
-        for (int i = value.size() - 2; i >= 0; i--) {
-            sb.append(String.format("%04d", value.get(i))); // Pad with leading zeros
+    // Number of decimal digits of the magnitude a (0 has 1 digit)
+    static int decimalLength(int[] a) {
+        int top = a[a.length - 1];
+        int topDigits = 1;
+        while (top >= 10) {
+            top /= 10;
+            topDigits++;
         }
+        return (a.length - 1) * BASE_DIGITS + topDigits;
+    }
 
-        return sb.toString();
+    // Writes the decimalLength(a) decimal digits of a into out starting at off
+    static void writeDigits(int[] a, byte[] out, int off) {
+        int pos = off + decimalLength(a);
+        // every digit except the most significant one is exactly 9 characters (zero padded)
+        for (int i = 0; i < a.length - 1; i++) {
+            int limb = a[i];
+            for (int j = 0; j < BASE_DIGITS; j++) {
+                out[--pos] = (byte) ('0' + limb % 10);
+                limb /= 10;
+            }
+        }
+        int top = a[a.length - 1]; // Most Significant digit, no padding
+        do {
+            out[--pos] = (byte) ('0' + top % 10);
+            top /= 10;
+        } while (top > 0);
     }
 
-    // Returns number of digits (this is for base 10000)
-    // which means 1234 has size 1
-    // 12345678 and 1234567 has size 2
+    // Returns number of digits (this is for base 10^9)
+    // which means 123456789 has size 1
+    // 1234567890 and 123456789012345678 have size 2
     public int size() {
-        return value.size();
+        return value.length;
     }
-}
\ No newline at end of file
+}
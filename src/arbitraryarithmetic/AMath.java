@@ -0,0 +1,547 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.IntFunction;
+
+// exp, ln, sin, cos, atan, pow and the constants pi, e, ln 2, ln 10 for AFloat, e.g.
+//   AMath.exp(new AFloat("1.5"), new PrecisionContext(100))
+// Everything is computed with a few guard digits and then rounded to the context, so the result
+// is within one unit of its last digit (usually it is the correctly rounded value). These are not
+// exact numbers, so an unlimited context is an ArithmeticException.
+//
+// How:
+//   - the constants are series summed by binary splitting (BinarySplitting): Chudnovsky for pi,
+//     sum 1/n! for e and atanh(1/m) series for the logarithms. They are cached per precision, a
+//     request for fewer digits than the cache has is just a rounding of the cached value.
+//   - exp: x = k ln 10 + r with |r| <= 1.2, so exp(x) = exp(r) * 10^k is only a scale change.
+//     exp(r) uses the "bit-burst" split r = r0 + r1 + ... where r_j is made of the decimals
+//     2^(j-1)+1 .. 2^j of r: every exp(r_j) is a series with small numerators (binary splitting
+//     again) and the more digits r_j has the fewer terms it needs.
+//   - sin, cos: x = k pi/2 + r with |r| <= pi/4, then the same bit-burst with the sin / cos
+//     series of every piece and the addition theorems.
+//   - ln and atan: Newton iteration on exp and on sin/cos with precision doubling, so only the
+//     last step runs at full precision.
+public final class AMath {
+    // extra digits every calculation carries
+    static final int GUARD = 10;
+
+    private static final Constant PI = new Constant(AMath::computePi);
+    private static final Constant E = new Constant(AMath::computeE);
+    private static final Constant LN2 = new Constant(AMath::computeLn2);
+    private static final Constant LN10 = new Constant(AMath::computeLn10);
+
+    private AMath() {
+    }
+
+    public static AFloat pi(PrecisionContext mc) {
+        return PI.get(working(mc)).round(mc);
+    }
+
+    public static AFloat e(PrecisionContext mc) {
+        return E.get(working(mc)).round(mc);
+    }
+
+    public static AFloat ln2(PrecisionContext mc) {
+        return LN2.get(working(mc)).round(mc);
+    }
+
+    public static AFloat ln10(PrecisionContext mc) {
+        return LN10.get(working(mc)).round(mc);
+    }
+
+    // e^x
+    public static AFloat exp(AFloat x, PrecisionContext mc) {
+        return exp(x, working(mc)).round(mc);
+    }
+
+    // natural logarithm, ArithmeticException for x <= 0
+    public static AFloat ln(AFloat x, PrecisionContext mc) {
+        if (x.signum() <= 0)
+            throw new ArithmeticException("Logarithm of non-positive number");
+        return ln(x, working(mc)).round(mc);
+    }
+
+    public static AFloat sin(AFloat x, PrecisionContext mc) {
+        return sinCos(x, working(mc))[0].round(mc);
+    }
+
+    public static AFloat cos(AFloat x, PrecisionContext mc) {
+        return sinCos(x, working(mc))[1].round(mc);
+    }
+
+    // arctangent in (-pi/2, pi/2)
+    public static AFloat atan(AFloat x, PrecisionContext mc) {
+        return atan(x, working(mc)).round(mc);
+    }
+
+    // x^y: integer exponents by repeated squaring (negative x allowed), everything else as
+    // exp(y ln x) for x > 0. 0^y is 0 for y > 0 and 1 for y = 0.
+    public static AFloat pow(AFloat x, AFloat y, PrecisionContext mc) {
+        int w = working(mc);
+        if (y.signum() == 0)
+            return new AFloat(1);
+        if (x.signum() == 0) {
+            if (y.signum() < 0)
+                throw new ArithmeticException("Division by zero");
+            return new AFloat();
+        }
+        AInteger n = integerValue(y);
+        if (n != null && n.value.length == 1) // |y| < 10^9
+            return powInteger(x, n.isNegative ? -n.value[0] : n.value[0], w).round(mc);
+        if (x.signum() < 0) {
+            if (n == null)
+                throw new ArithmeticException("Negative base with non-integer exponent");
+            AFloat r = pow(x.negate(), y, mc);
+            return n.value[0] % 2 == 0 ? r : r.negate();
+        }
+
+        // exp needs y ln x to w decimals, i.e. w + (digits before the point) significant digits
+        double magnitude = log10(y) + Math.log10(Math.abs(log10(x) * Math.log(10)) + 1);
+        int extra = (int) Math.max(0, Math.min(magnitude + 1, Integer.MAX_VALUE / 2));
+        AFloat t = y.multiply(ln(x, w + extra), new PrecisionContext(w + extra));
+        return exp(t, w).round(mc);
+    }
+
+    // significant digits the work is done with, precision plus the guard digits
+    private static int working(PrecisionContext mc) {
+        if (mc.isUnlimited())
+            throw new ArithmeticException("Transcendental result needs a limited PrecisionContext");
+        return Math.addExact(mc.getPrecision(), GUARD);
+    }
+
+    // exp(x) to w significant digits
+    static AFloat exp(AFloat x, int w) {
+        if (x.signum() == 0)
+            return new AFloat(1);
+        if (log10(x) > 10) // e^(10^10) does not fit the scale of an AFloat (and nor does e^-(10^10))
+            throw new ArithmeticException("Result out of range");
+
+        long k = Math.round(approximate(x) / Math.log(10));
+        AFloat r = x;
+        if (k != 0) {
+            // k ln 10 to w decimals: ln 10 needs the digits of k on top
+            int digits = w + 3 + (int) Math.log10(Math.abs(k));
+            r = x.subtract(LN10.get(digits).multiply(new AFloat(AInteger.valueOf(Math.abs(k)), 0, k < 0)));
+        }
+        AFloat result = expBitBurst(truncate(r, w), w);
+        long scale = (long) result.scale() - k;
+        if (scale != (int) scale)
+            throw new ArithmeticException("Result out of range");
+        AInteger u = result.signedUnscaled();
+        return new AFloat(u, (int) scale, false);
+    }
+
+    // ln(x) to w significant digits, x > 0
+    static AFloat ln(AFloat x, int w) {
+        // x = m * 10^shift with m in [1, 10), unless x is in [0.1, 10) already (then shift = 0
+        // so that ln(0.99) isn't computed as ln(9.9) - ln(10) with a cancellation)
+        long top = topExponent(x);
+        long shift = top >= 0 && top <= 1 ? 0 : top - 1;
+        AFloat m = shift == 0 ? x : new AFloat(x.signedUnscaled(), Math.toIntExact(x.scale() + shift), false);
+
+        // ln(m) is about m - 1 near 1, those leading zeros are digits that have to be computed too
+        AFloat d = m.subtract(new AFloat(1));
+        if (d.signum() == 0 && shift == 0)
+            return new AFloat();
+        int extra = d.signum() == 0 ? 0 : (int) Math.max(0, -topExponent(d));
+
+        // Newton on exp(y) = m: y -> y - 1 + m exp(-y), the error squares in every step
+        int target = w + extra + 2;
+        AFloat y = new AFloat(Double.toString(Math.log(approximate(m))));
+        for (int digits = 15; digits < target;) {
+            digits = Math.min(2 * digits, target);
+            PrecisionContext mc = new PrecisionContext(digits);
+            AFloat correction = m.multiply(exp(y.negate(), digits), mc).subtract(new AFloat(1));
+            y = truncate(y.add(correction), digits);
+        }
+        if (shift == 0)
+            return y.round(new PrecisionContext(w));
+        int digits = w + 3 + (int) Math.log10(Math.abs(shift));
+        AFloat shifted = LN10.get(digits).multiply(new AFloat(AInteger.valueOf(Math.abs(shift)), 0, shift < 0));
+        return y.add(shifted).round(new PrecisionContext(w));
+    }
+
+    // {sin x, cos x} to w significant digits
+    static AFloat[] sinCos(AFloat x, int w) {
+        if (x.signum() == 0)
+            return new AFloat[] { new AFloat(), new AFloat(1) };
+
+        // k = x / (pi/2) rounded, with enough digits of pi for all digits of k
+        long top = Math.max(0, topExponent(x));
+        AInteger k;
+        if (top <= 15) {
+            k = AInteger.valueOf(Math.round(approximate(x) / (Math.PI / 2)));
+        } else {
+            int digits = Math.toIntExact(top + 20);
+            AFloat q = x.divide(halfPi(digits), new PrecisionContext(digits));
+            k = integerPart(q);
+        }
+
+        // r = x - k pi/2, if x is close to a multiple of pi/2 the leading digits cancel out and
+        // pi is taken again with that many more digits
+        AFloat r = x;
+        if (!k.isZero()) {
+            int digits = Math.toIntExact(w + top + 5);
+            r = x.subtract(halfPi(digits).multiply(new AFloat(k.abs(), 0, k.isNegative)));
+            long lost = r.signum() == 0 ? w : -topExponent(r);
+            if (lost > 0) {
+                digits = Math.toIntExact(digits + lost);
+                r = x.subtract(halfPi(digits).multiply(new AFloat(k.abs(), 0, k.isNegative)));
+            }
+        }
+        AFloat[] sc = sinCosBitBurst(truncate(r, w), w);
+
+        int quadrant = (k.value[0] % 4) * (k.isNegative ? -1 : 1) & 3;
+        switch (quadrant) {
+            case 0:
+                return sc;
+            case 1:
+                return new AFloat[] { sc[1], sc[0].negate() };
+            case 2:
+                return new AFloat[] { sc[0].negate(), sc[1].negate() };
+            default:
+                return new AFloat[] { sc[1].negate(), sc[0] };
+        }
+    }
+
+    // atan(x) to w significant digits
+    static AFloat atan(AFloat x, int w) {
+        if (x.signum() == 0)
+            return new AFloat();
+        PrecisionContext mc = new PrecisionContext(w + 2);
+        if (topExponent(x) > 0 && x.abs().subtract(new AFloat(1)).signum() > 0) {
+            // atan(x) = +-pi/2 - atan(1/x)
+            AFloat inner = atan(new AFloat(1).divide(x, mc), w + 2);
+            AFloat halfPi = halfPi(w + 2);
+            return (x.signum() > 0 ? halfPi : halfPi.negate()).subtract(inner).round(new PrecisionContext(w));
+        }
+
+        // Newton on tan(y) = x: y -> y - (sin y - x cos y) / (cos y + x sin y)
+        double guess = approximate(x);
+        AFloat y = Math.abs(guess) < 1e-8 ? x : new AFloat(Double.toString(Math.atan(guess)));
+        int target = w + 2;
+        for (int digits = 15; digits < target;) {
+            digits = Math.min(2 * digits, target);
+            PrecisionContext step = new PrecisionContext(digits + 2);
+            AFloat[] sc = sinCosBitBurst(truncate(y, digits + 2), digits + 2);
+            AFloat f = sc[0].subtract(x.multiply(sc[1], step), step);
+            AFloat df = sc[1].add(x.multiply(sc[0], step), step);
+            y = y.subtract(f.divide(df, step), step);
+        }
+        return y.round(new PrecisionContext(w));
+    }
+
+    // x^n by repeated squaring, every step rounded to w plus the digits of n
+    private static AFloat powInteger(AFloat x, int n, int w) {
+        PrecisionContext mc = new PrecisionContext(w + 10);
+        int e = Math.abs(n);
+        AFloat result = x;
+        for (int bit = Integer.highestOneBit(e) >> 1; bit > 0; bit >>= 1) {
+            result = result.multiply(result, mc);
+            if ((e & bit) != 0)
+                result = result.multiply(x, mc);
+        }
+        return n < 0 ? new AFloat(1).divide(result, mc) : result;
+    }
+
+    // exp(r) for |r| < 2, r's decimals are split into the pieces 1..2, 3..4, 5..8, 9..16, ...
+    private static AFloat expBitBurst(AFloat r, int w) {
+        PrecisionContext mc = new PrecisionContext(w + 2);
+        AFloat result = new AFloat(1);
+        for (AInteger[] piece : pieces(r))
+            result = result.multiply(expSeries(piece[0], piece[1].value[0], w + 2), mc);
+        return result;
+    }
+
+    // {sin r, cos r} for |r| < 2, same pieces as expBitBurst, put together with
+    // sin(a + b) = sin a cos b + cos a sin b, cos(a + b) = cos a cos b - sin a sin b
+    private static AFloat[] sinCosBitBurst(AFloat r, int w) {
+        PrecisionContext mc = new PrecisionContext(w + 2);
+        AFloat sin = new AFloat(), cos = new AFloat(1);
+        for (AInteger[] piece : pieces(r)) {
+            AFloat[] sc = sinCosSeries(piece[0], piece[1].value[0], w + 2);
+            AFloat nextSin = sin.multiply(sc[1], mc).add(cos.multiply(sc[0], mc), mc);
+            cos = cos.multiply(sc[1], mc).subtract(sin.multiply(sc[0], mc), mc);
+            sin = nextSin;
+        }
+        return new AFloat[] { sin, cos };
+    }
+
+    // the non-zero pieces {v, m} of r = sum of v * 10^-m, where piece j holds the decimals
+    // 2^(j-1)+1 .. 2^j (the first one also the integer part)
+    private static List<AInteger[]> pieces(AFloat r) {
+        AInteger u = r.signedUnscaled();
+        int m = r.scale();
+        if (m < 0) {
+            u = u.scaleByPowerOfTen(-m);
+            m = 0;
+        }
+        List<AInteger[]> pieces = new ArrayList<>();
+        AInteger done = new AInteger(); // r cut after lo decimals, times 10^lo
+        int lo = 0;
+        for (int hi = Math.min(m, 2);; hi = Math.min(m, 2 * hi)) {
+            AInteger prefix = u.divideByPowerOfTen(m - hi);
+            AInteger v = prefix.subtract(done.scaleByPowerOfTen(hi - lo));
+            if (!v.isZero())
+                pieces.add(new AInteger[] { v, new AInteger(hi) });
+            if (hi == m)
+                return pieces;
+            done = prefix;
+            lo = hi;
+        }
+    }
+
+    // exp(v / 10^m) = sum (v / 10^m)^n / n! to w digits
+    private static AFloat expSeries(AInteger v, int m, int w) {
+        double lx = log10(new AFloat(v.abs(), m, false));
+        long terms = terms(lx, 1, 0, w);
+        AInteger tenM = new AInteger(1).scaleByPowerOfTen(m);
+        BinarySplitting.Series s = new BinarySplitting.Series() {
+            @Override
+            public AInteger p(long n) {
+                return n == 0 ? new AInteger(1) : v;
+            }
+
+            @Override
+            public AInteger q(long n) {
+                return n == 0 ? new AInteger(1) : tenM.multiply(AInteger.valueOf(n));
+            }
+        };
+        return BinarySplitting.sum(s, terms, new PrecisionContext(w));
+    }
+
+    // {sin, cos} of v / 10^m to w digits, sum (-1)^n x^(2n+1) / (2n+1)! and sum (-1)^n x^2n / (2n)!
+    private static AFloat[] sinCosSeries(AInteger v, int m, int w) {
+        double lx = log10(new AFloat(v.abs(), m, false));
+        AInteger tenM = new AInteger(1).scaleByPowerOfTen(m);
+        AInteger minusV2 = v.multiply(v).negate(), ten2M = tenM.multiply(tenM);
+        BinarySplitting.Series sin = new BinarySplitting.Series() {
+            @Override
+            public AInteger p(long n) {
+                return n == 0 ? v : minusV2;
+            }
+
+            @Override
+            public AInteger q(long n) {
+                return n == 0 ? tenM : ten2M.multiply(AInteger.valueOf(2 * n * (2 * n + 1)));
+            }
+        };
+        BinarySplitting.Series cos = new BinarySplitting.Series() {
+            @Override
+            public AInteger p(long n) {
+                return n == 0 ? new AInteger(1) : minusV2;
+            }
+
+            @Override
+            public AInteger q(long n) {
+                return n == 0 ? new AInteger(1) : ten2M.multiply(AInteger.valueOf((2 * n - 1) * 2 * n));
+            }
+        };
+        PrecisionContext mc = new PrecisionContext(w);
+        return new AFloat[] { BinarySplitting.sum(sin, terms(lx, 2, 1, w), mc), BinarySplitting.sum(cos, terms(lx, 2, 0, w), mc) };
+    }
+
+    // number of terms x^(step n + offset) / (step n + offset)! (log10 x = lx) of a series
+    // until they drop below 10^-(digits + 2) relative to the first one
+    private static long terms(double lx, int step, int offset, int digits) {
+        double first = offset * lx - logFactorial(offset);
+        long n = 1;
+        while (true) {
+            long k = step * n + offset;
+            double term = k * lx - logFactorial(k) - first;
+            if (term < -(digits + 2) && Math.pow(10, lx) < k + 1.0)
+                return n;
+            n++;
+        }
+    }
+
+    // log10(k!) (Stirling for big k)
+    private static double logFactorial(long k) {
+        if (k < 20) {
+            double f = 1;
+            for (int i = 2; i <= k; i++)
+                f *= i;
+            return Math.log10(f);
+        }
+        return (k * Math.log(k) - k + 0.5 * Math.log(2 * Math.PI * k) + 1.0 / (12 * k)) / Math.log(10);
+    }
+
+    private static AFloat halfPi(int digits) {
+        return PI.get(digits).divide(new AFloat(2), new PrecisionContext(digits + GUARD));
+    }
+
+    // pi = 426880 sqrt(10005) / S (Chudnovsky), S = sum (-1)^n (6n)! (13591409 + 545140134 n)
+    // / ((3n)! (n!)^3 640320^3n); every term adds about 14 digits
+    private static AFloat computePi(int digits) {
+        PrecisionContext mc = new PrecisionContext(digits);
+        AInteger c3 = AInteger.valueOf(10939058860032000L); // 640320^3 / 24
+        BinarySplitting.Series s = new BinarySplitting.Series() {
+            @Override
+            public AInteger p(long n) {
+                if (n == 0)
+                    return new AInteger(1);
+                return AInteger.valueOf(6 * n - 5).multiply(AInteger.valueOf(2 * n - 1))
+                        .multiply(AInteger.valueOf(6 * n - 1)).negate();
+            }
+
+            @Override
+            public AInteger q(long n) {
+                if (n == 0)
+                    return new AInteger(1);
+                AInteger big = AInteger.valueOf(n);
+                return big.multiply(big).multiply(big).multiply(c3);
+            }
+
+            @Override
+            public AInteger a(long n) {
+                return AInteger.valueOf(13591409 + 545140134L * n);
+            }
+        };
+        AFloat sum = BinarySplitting.sum(s, digits / 14 + 2, mc);
+        return new AFloat(426880).multiply(new AFloat(10005).sqrt(mc), mc).divide(sum, mc);
+    }
+
+    // e = sum 1/n!
+    private static AFloat computeE(int digits) {
+        long terms = 1;
+        while (logFactorial(terms) < digits + 2)
+            terms++;
+        BinarySplitting.Series s = new BinarySplitting.Series() {
+            @Override
+            public AInteger p(long n) {
+                return new AInteger(1);
+            }
+
+            @Override
+            public AInteger q(long n) {
+                return n == 0 ? new AInteger(1) : AInteger.valueOf(n);
+            }
+        };
+        return BinarySplitting.sum(s, terms + 1, new PrecisionContext(digits));
+    }
+
+    // ln 2 = 18 atanh(1/26) - 2 atanh(1/4801) + 8 atanh(1/8749)
+    private static AFloat computeLn2(int digits) {
+        PrecisionContext mc = new PrecisionContext(digits);
+        return atanhInverse(26, digits).multiply(new AFloat(18))
+                .subtract(atanhInverse(4801, digits).multiply(new AFloat(2)))
+                .add(atanhInverse(8749, digits).multiply(new AFloat(8))).round(mc);
+    }
+
+    // ln 10 = 3 ln 2 + ln(5/4) = 3 ln 2 + 2 atanh(1/9)
+    private static AFloat computeLn10(int digits) {
+        PrecisionContext mc = new PrecisionContext(digits);
+        return LN2.get(digits).multiply(new AFloat(3)).add(atanhInverse(9, digits).multiply(new AFloat(2))).round(mc);
+    }
+
+    // atanh(1/m) = sum 1 / ((2n + 1) m^(2n+1))
+    private static AFloat atanhInverse(int m, int digits) {
+        AInteger mm = AInteger.valueOf((long) m * m);
+        BinarySplitting.Series s = new BinarySplitting.Series() {
+            @Override
+            public AInteger p(long n) {
+                return new AInteger(1);
+            }
+
+            @Override
+            public AInteger q(long n) {
+                return n == 0 ? new AInteger(m) : mm;
+            }
+
+            @Override
+            public AInteger b(long n) {
+                return AInteger.valueOf(2 * n + 1);
+            }
+        };
+        long terms = (long) ((digits + 2) / (2 * Math.log10(m))) + 1;
+        return BinarySplitting.sum(s, terms, new PrecisionContext(digits + 2));
+    }
+
+    // x cut (towards zero) after about w significant digits (at least w decimals)
+    private static AFloat truncate(AFloat x, int w) {
+        long decimals = w + 3 + Math.max(0, x.signum() == 0 ? 0 : -topExponent(x));
+        long drop = x.scale() - decimals;
+        if (drop <= 0)
+            return x;
+        AInteger u = x.signedUnscaled();
+        return new AFloat(u.abs().divideByPowerOfTen((int) drop), (int) decimals, u.isNegative);
+    }
+
+    // the integer part of x, rounded to nearest
+    private static AInteger integerPart(AFloat x) {
+        AFloat half = new AFloat(x.signum() < 0 ? "-0.5" : "0.5");
+        AFloat y = x.add(half);
+        AInteger u = y.signedUnscaled();
+        return y.scale() <= 0 ? u.scaleByPowerOfTen(-y.scale()) : u.divideByPowerOfTen(y.scale());
+    }
+
+    // y as an AInteger if it's a whole number, else null
+    private static AInteger integerValue(AFloat y) {
+        AInteger u = y.signedUnscaled();
+        if (y.scale() <= 0)
+            return u.scaleByPowerOfTen(-y.scale());
+        if (u.hasNonZeroDecimals(y.scale()))
+            return null;
+        return u.divideByPowerOfTen(y.scale());
+    }
+
+    // E with 10^(E-1) <= |x| < 10^E, x != 0
+    private static long topExponent(AFloat x) {
+        return (long) AInteger.decimalLength(x.signedUnscaled().value) - x.scale();
+    }
+
+    // log10(|x|) as a double, also when |x| is far outside the double range (x != 0)
+    static double log10(AFloat x) {
+        AInteger u = x.signedUnscaled().abs();
+        int drop = Math.max(0, AInteger.decimalLength(u.value) - 17);
+        int[] top = u.divideByPowerOfTen(drop).value;
+        double mantissa = top[0] + (top.length > 1 ? top[1] * (double) AInteger.BASE : 0);
+        return Math.log10(mantissa) + drop - x.scale();
+    }
+
+    // x as a double (0 if it's too small for one), only used for first guesses
+    private static double approximate(AFloat x) {
+        if (x.signum() == 0)
+            return 0;
+        double l = log10(x);
+        if (l < -300)
+            return 0;
+        double d = Math.pow(10, l);
+        return x.signum() < 0 ? -d : d;
+    }
+
+    // a constant with the values computed so far, by number of correct digits. A request is
+    // answered by the smallest cached value that is good enough; if that has a lot more digits
+    // it's rounded and the rounded value is kept as well, so the usual few precisions are
+    // answered without rounding a huge number every time.
+    private static final class Constant {
+        private static final int MAX_ENTRIES = 16;
+        private final IntFunction<AFloat> compute; // digits -> value with that many correct digits
+        private final ConcurrentSkipListMap<Integer, AFloat> values = new ConcurrentSkipListMap<>();
+
+        Constant(IntFunction<AFloat> compute) {
+            this.compute = compute;
+        }
+
+        // the constant with at least digits correct significant digits
+        AFloat get(int digits) {
+            Map.Entry<Integer, AFloat> cached = values.ceilingEntry(digits);
+            if (cached == null) {
+                synchronized (this) {
+                    cached = values.ceilingEntry(digits);
+                    if (cached == null) {
+                        AFloat value = compute.apply(digits + GUARD).round(new PrecisionContext(digits + GUARD));
+                        values.put(digits, value);
+                        return value;
+                    }
+                }
+            }
+            if (cached.getKey() <= 2L * digits || values.size() >= MAX_ENTRIES)
+                return cached.getValue();
+            AFloat rounded = cached.getValue().round(new PrecisionContext(digits + GUARD));
+            values.putIfAbsent(digits, rounded);
+            return rounded;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package arbitraryarithmetic;
+
+// Exact fractions numerator / denominator of AIntegers, e.g.
+//   new ARational("1/3").add(new ARational("1/6")) -> 1/2
+// Unlike AFloat.divide nothing is ever rounded.
+//
+// Normalization is lazy: results are not divided by gcd(numerator, denominator) after every
+// operation, because in a chain of operations most of those gcds would be wasted work. A fraction
+// is only reduced when it has grown past twice its size after the last reduction (and past
+// REDUCE_THRESHOLD digits), or when it is looked at: toString, numerator(), denominator(),
+// hashCode. The value never changes, only its representation: numerator and denominator live
+// together in one immutable Fraction that reducing swaps out with a single write, so another
+// thread sees either the old pair or the reduced one, never a mix of both.
+public final class ARational implements Comparable<ARational> {
+    // fractions up to this many digits (base 10^9, numerator + denominator) are never reduced early
+    static final int REDUCE_THRESHOLD = Integer.getInteger("arbitraryarithmetic.rationalReduceThreshold", 32);
+
+    // numerator carries the sign, denominator is always > 0; sizeAfterReduce is the size (digits of
+    // both) when it was last reduced, or created from reduced parts
+    private record Fraction(AInteger numerator, AInteger denominator, boolean reduced, int sizeAfterReduce) {
+    }
+
+    private volatile Fraction fraction;
+
+    // numerator / denominator, ArithmeticException if the denominator is 0
+    public ARational(AInteger numerator, AInteger denominator) {
+        this(numerator, nonZero(denominator), false, 0);
+    }
+
+    // whole number
+    public ARational(AInteger number) {
+        this(number, AInteger.ONE, true, 0);
+    }
+
+    public ARational(int number) {
+        this(new AInteger(number));
+    }
+
+    // "3", "-22/7" or a decimal like "0.125" / "1.5e-3" (as AFloat reads it)
+    public ARational(String s) {
+        this(parse(s));
+    }
+
+    // the exact value of an AFloat
+    public ARational(AFloat value) {
+        this(fromFloat(value));
+    }
+
+    private ARational(ARational other) {
+        this.fraction = other.fraction;
+    }
+
+    // internal, makes the denominator positive and reduces if the size asks for it
+    private ARational(AInteger numerator, AInteger denominator, boolean reduced, int sizeAfterReduce) {
+        if (denominator.isNegative) {
+            numerator = numerator.negate();
+            denominator = denominator.negate();
+        }
+        if (numerator.isZero() && !denominator.isZero()) {
+            denominator = AInteger.ONE;
+            reduced = true;
+        }
+        int size = numerator.value.length + denominator.value.length;
+        Fraction f = new Fraction(numerator, denominator, reduced, reduced ? size : sizeAfterReduce);
+        if (!reduced && size > REDUCE_THRESHOLD && size > 2 * sizeAfterReduce)
+            f = reduce(f); // and the next time only once it has doubled again
+        this.fraction = f;
+    }
+
+    private static AInteger nonZero(AInteger denominator) {
+        if (denominator.isZero())
+            throw new ArithmeticException("Division by zero");
+        return denominator;
+    }
+
+    private static ARational parse(String s) {
+        if (s == null || s.isEmpty())
+            throw new IllegalArgumentException("Empty string");
+        int slash = s.indexOf('/');
+        if (slash < 0)
+            return fromFloat(new AFloat(s));
+        return new ARational(new AInteger(s.substring(0, slash).trim()), new AInteger(s.substring(slash + 1).trim()));
+    }
+
+    // unscaled * 10^-scale, whole number when scale <= 0
+    private static ARational fromFloat(AFloat f) {
+        AInteger unscaled = f.signedUnscaled();
+        int scale = f.scale();
+        if (scale <= 0)
+            return new ARational(unscaled.scaleByPowerOfTen(-scale));
+        return new ARational(unscaled, AInteger.ONE.scaleByPowerOfTen(scale), false, 0);
+    }
+
+    // numerator and denominator divided by their gcd
+    private static Fraction reduce(Fraction f) {
+        if (f.reduced)
+            return f;
+        AInteger g = f.numerator.gcd(f.denominator);
+        AInteger n = f.numerator, d = f.denominator;
+        if (!(g.value.length == 1 && g.value[0] == 1)) {
+            n = n.divide(g);
+            d = d.divide(g);
+        }
+        return new Fraction(n, d, true, n.value.length + d.value.length);
+    }
+
+    // the reduced fraction, stored for next time (same value, so two threads doing this at once
+    // just both store an equal pair)
+    private Fraction reduced() {
+        Fraction f = fraction;
+        if (!f.reduced) {
+            f = reduce(f);
+            fraction = f;
+        }
+        return f;
+    }
+
+    // numerator of the reduced fraction
+    public AInteger numerator() {
+        return reduced().numerator;
+    }
+
+    // denominator of the reduced fraction, always positive
+    public AInteger denominator() {
+        return reduced().denominator;
+    }
+
+    public ARational add(ARational other) {
+        Fraction a = fraction, b = other.fraction;
+        AInteger n1 = a.numerator, d1 = a.denominator, n2 = b.numerator, d2 = b.denominator;
+        int size = Math.max(a.sizeAfterReduce, b.sizeAfterReduce);
+        if (AInteger.compareAbsolute(d1, d2) == 0) // same denominator
+            return new ARational(n1.add(n2), d1, false, size);
+        return new ARational(n1.multiply(d2).add(n2.multiply(d1)), d1.multiply(d2), false, size);
+    }
+
+    public ARational subtract(ARational other) {
+        return add(other.negate());
+    }
+
+    public ARational multiply(ARational other) {
+        Fraction a = fraction, b = other.fraction;
+        int size = Math.max(a.sizeAfterReduce, b.sizeAfterReduce);
+        return new ARational(a.numerator.multiply(b.numerator), a.denominator.multiply(b.denominator), false, size);
+    }
+
+    // ArithmeticException when other is 0
+    public ARational divide(ARational other) {
+        Fraction a = fraction, b = other.fraction;
+        if (b.numerator.isZero())
+            throw new ArithmeticException("Division by zero");
+        int size = Math.max(a.sizeAfterReduce, b.sizeAfterReduce);
+        return new ARational(a.numerator.multiply(b.denominator), a.denominator.multiply(b.numerator), false, size);
+    }
+
+    public ARational negate() {
+        Fraction f = fraction;
+        return new ARational(f.numerator.negate(), f.denominator, f.reduced, f.sizeAfterReduce);
+    }
+
+    public ARational abs() {
+        return fraction.numerator.isNegative ? negate() : this;
+    }
+
+    public int signum() {
+        return fraction.numerator.signum();
+    }
+
+    // reciprocal, ArithmeticException for 0
+    public ARational inverse() {
+        Fraction f = fraction;
+        if (f.numerator.isZero())
+            throw new ArithmeticException("Division by zero");
+        return new ARational(f.denominator, f.numerator, f.reduced, f.sizeAfterReduce);
+    }
+
+    // this^exponent, a negative exponent takes the inverse first
+    public ARational pow(int exponent) {
+        ARational base = exponent < 0 ? inverse() : this;
+        Fraction f = base.reduced(); // powers of a reduced fraction stay reduced
+        int e = Math.abs(exponent); // Integer.MIN_VALUE can't be computed anyway
+        return new ARational(f.numerator.pow(e), f.denominator.pow(e), true, 0);
+    }
+
+    // the value rounded to mc (AFloat.divide rules, unlimited -> 30 truncated fractional digits)
+    public AFloat toAFloat(PrecisionContext mc) {
+        Fraction f = fraction;
+        return new AFloat(f.numerator.abs(), 0, f.numerator.isNegative).divide(new AFloat(f.denominator, 0, false), mc);
+    }
+
+    // compares the values by cross multiplication, no reduction needed
+    @Override
+    public int compareTo(ARational other) {
+        Fraction a = fraction, b = other.fraction;
+        int sa = a.numerator.signum(), sb = b.numerator.signum();
+        if (sa != sb)
+            return Integer.compare(sa, sb);
+        return a.numerator.multiply(b.denominator).compareTo(b.numerator.multiply(a.denominator));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ARational))
+            return false;
+        return compareTo((ARational) o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        Fraction f = reduced();
+        return 31 * f.numerator.hashCode() + f.denominator.hashCode();
+    }
+
+    // "numerator/denominator" reduced, just the numerator for whole numbers
+    @Override
+    public String toString() {
+        Fraction f = reduced();
+        AInteger d = f.denominator;
+        return d.value.length == 1 && d.value[0] == 1 ? f.numerator.toString() : f.numerator + "/" + d;
+    }
+}
@@ -0,0 +1,213 @@
+package arbitraryarithmetic;
+
+import java.io.IOException;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+// Binary format for AInteger / AFloat, for checkpoints and for passing numbers between processes.
+// Text needs a base conversion and one byte per decimal digit; here the base 10^9 digits are
+// just stored as they are, 4 bytes for 9 decimal digits, and reading them is a bulk copy.
+//
+// Layout (little endian):
+//   byte   'A'
+//   byte   type, 'I' = AInteger, 'F' = AFloat
+//   byte   version (VERSION)
+//   byte   flags, bit 0 = negative
+//   int    scale            (AFloat only)
+//   int    n, number of digits
+//   int[n] digits, least significant first, each in 0 .. 10^9 - 1, the last one not 0 (unless n = 1)
+//
+//   ByteBuffer buf = ByteBuffer.allocate(BinaryCodec.sizeOf(x));
+//   BinaryCodec.write(x, buf);
+//   buf.flip();
+//   AInteger y = BinaryCodec.readInteger(buf);
+// The FileChannel versions map the file a chunk at a time and copy the digits straight between
+// the digit array and the mapping, so even numbers of several GB never go through a String or a
+// second copy of the array. Malformed data is an IllegalArgumentException.
+public final class BinaryCodec {
+    public static final byte VERSION = 1;
+
+    private static final byte MAGIC = 'A', INTEGER = 'I', FLOAT = 'F';
+    private static final int NEGATIVE = 1;
+    // bytes of a file mapped at once (a multiple of 4, so digits never straddle two mappings)
+    private static final int CHUNK = 1 << 26;
+
+    private BinaryCodec() {
+    }
+
+    // bytes write(x, ...) needs
+    public static long sizeOf(AInteger x) {
+        return 8 + 4L * x.value.length;
+    }
+
+    public static long sizeOf(AFloat x) {
+        return 12 + 4L * x.signedUnscaled().value.length;
+    }
+
+    // writes x at the buffer's position and moves it past x,
+    // BufferOverflowException if there isn't enough room (nothing is written then)
+    public static void write(AInteger x, ByteBuffer out) {
+        checkRoom(out, sizeOf(x));
+        ByteBuffer header = out.slice().order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).put(INTEGER).put(VERSION).put((byte) (x.isNegative ? NEGATIVE : 0)).putInt(x.value.length);
+        putDigits(x.value, out, 8);
+    }
+
+    public static void write(AFloat x, ByteBuffer out) {
+        AInteger u = x.signedUnscaled();
+        checkRoom(out, sizeOf(x));
+        ByteBuffer header = out.slice().order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).put(FLOAT).put(VERSION).put((byte) (u.isNegative ? NEGATIVE : 0)).putInt(x.scale())
+                .putInt(u.value.length);
+        putDigits(u.value, out, 12);
+    }
+
+    // reads an AInteger at the buffer's position and moves it past the number
+    public static AInteger readInteger(ByteBuffer in) {
+        ByteBuffer header = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        boolean negative = readType(header, INTEGER);
+        int[] digits = new int[readLength(header, in.remaining() - 8)];
+        getDigits(in, 8, digits, 0, digits.length);
+        in.position(in.position() + 8 + 4 * digits.length);
+        return new AInteger(checkDigits(digits), negative);
+    }
+
+    public static AFloat readFloat(ByteBuffer in) {
+        ByteBuffer header = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        boolean negative = readType(header, FLOAT);
+        int scale = header.getInt();
+        int[] digits = new int[readLength(header, in.remaining() - 12)];
+        getDigits(in, 12, digits, 0, digits.length);
+        in.position(in.position() + 12 + 4 * digits.length);
+        return new AFloat(new AInteger(checkDigits(digits), false), scale, negative);
+    }
+
+    // writes x at the channel's position (which is moved past it), the channel has to be
+    // open for reading and writing since the file is mapped READ_WRITE
+    public static void write(AInteger x, FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).put(INTEGER).put(VERSION).put((byte) (x.isNegative ? NEGATIVE : 0)).putInt(x.value.length);
+        writeMapped(channel, header, x.value);
+    }
+
+    public static void write(AFloat x, FileChannel channel) throws IOException {
+        AInteger u = x.signedUnscaled();
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(MAGIC).put(FLOAT).put(VERSION).put((byte) (u.isNegative ? NEGATIVE : 0)).putInt(x.scale())
+                .putInt(u.value.length);
+        writeMapped(channel, header, u.value);
+    }
+
+    // reads an AInteger at the channel's position (which is moved past it)
+    public static AInteger readInteger(FileChannel channel) throws IOException {
+        ByteBuffer header = readHeader(channel, 8);
+        boolean negative = readType(header, INTEGER);
+        int[] digits = readMapped(channel, readLength(header, channel.size() - channel.position()));
+        return new AInteger(checkDigits(digits), negative);
+    }
+
+    public static AFloat readFloat(FileChannel channel) throws IOException {
+        ByteBuffer header = readHeader(channel, 12);
+        boolean negative = readType(header, FLOAT);
+        int scale = header.getInt();
+        int[] digits = readMapped(channel, readLength(header, channel.size() - channel.position()));
+        return new AFloat(new AInteger(checkDigits(digits), false), scale, negative);
+    }
+
+    private static void checkRoom(ByteBuffer out, long size) {
+        if (out.remaining() < size)
+            throw new BufferOverflowException();
+    }
+
+    // digits after the header of length offset, then the position is moved past all of it
+    private static void putDigits(int[] digits, ByteBuffer out, int offset) {
+        ByteBuffer body = out.slice();
+        body.position(offset);
+        body.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(digits);
+        out.position(out.position() + offset + 4 * digits.length);
+    }
+
+    private static void getDigits(ByteBuffer in, int offset, int[] digits, int from, int count) {
+        ByteBuffer body = in.slice();
+        body.position(offset);
+        body.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(digits, from, count);
+    }
+
+    // checks magic, type and version, returns the sign
+    private static boolean readType(ByteBuffer header, byte type) {
+        if (header.remaining() < (type == FLOAT ? 12 : 8))
+            throw new IllegalArgumentException("Truncated number");
+        byte magic = header.get(), actual = header.get(), version = header.get(), flags = header.get();
+        if (magic != MAGIC || (actual != INTEGER && actual != FLOAT))
+            throw new IllegalArgumentException("Not an encoded number");
+        if (actual != type)
+            throw new IllegalArgumentException(actual == FLOAT ? "Encoded number is an AFloat" : "Encoded number is an AInteger");
+        if (version != VERSION)
+            throw new IllegalArgumentException("Unsupported version " + version);
+        return (flags & NEGATIVE) != 0;
+    }
+
+    // number of digits, checked against the bytes that are left after the header
+    private static int readLength(ByteBuffer header, long available) {
+        int n = header.getInt();
+        if (n <= 0)
+            throw new IllegalArgumentException("Bad length " + n);
+        if (4L * n > available)
+            throw new IllegalArgumentException("Truncated number");
+        return n;
+    }
+
+    // the digits are trimmed and below the base, or the data is no number of ours
+    private static int[] checkDigits(int[] digits) {
+        for (int d : digits) {
+            if (d < 0 || d >= AInteger.BASE)
+                throw new IllegalArgumentException("Bad digit " + d);
+        }
+        if (digits.length > 1 && digits[digits.length - 1] == 0)
+            throw new IllegalArgumentException("Leading zero digit");
+        return digits;
+    }
+
+    private static ByteBuffer readHeader(FileChannel channel, int size) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        long position = channel.position();
+        while (header.hasRemaining()) {
+            if (channel.read(header, position + header.position()) < 0)
+                throw new IllegalArgumentException("Truncated number");
+        }
+        channel.position(position + size);
+        header.flip();
+        return header;
+    }
+
+    // header, then the digits through READ_WRITE mappings of at most CHUNK bytes
+    private static void writeMapped(FileChannel channel, ByteBuffer header, int[] digits) throws IOException {
+        long position = channel.position();
+        header.flip();
+        while (header.hasRemaining())
+            position += channel.write(header, position);
+        for (int from = 0; from < digits.length;) {
+            int count = Math.min(digits.length - from, CHUNK / 4);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_WRITE, position, 4L * count);
+            map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().put(digits, from, count);
+            from += count;
+            position += 4L * count;
+        }
+        channel.position(position);
+    }
+
+    // n digits through READ_ONLY mappings of at most CHUNK bytes
+    private static int[] readMapped(FileChannel channel, int n) throws IOException {
+        int[] digits = new int[n];
+        long position = channel.position();
+        for (int from = 0; from < n;) {
+            int count = Math.min(n - from, CHUNK / 4);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, position, 4L * count);
+            map.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(digits, from, count);
+            from += count;
+            position += 4L * count;
+        }
+        channel.position(position);
+        return digits;
+    }
+}
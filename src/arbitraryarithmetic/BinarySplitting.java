@@ -0,0 +1,92 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+// Binary splitting for hypergeometric-like series (Haible & Papanikolaou)
+//   S = sum over n = 0 .. N-1 of  a(n)/b(n) * (p(0) * ... * p(n)) / (q(0) * ... * q(n))
+// with a, b, p, q small integer valued functions of n. Example, e = sum 1/n!:
+//   p(n) = 1, q(n) = n (q(0) = 1), a = b = 1.
+// Summing term by term would need a division per term and numbers that grow with every step.
+// Splitting the range in halves instead keeps the whole sum as exact integers P, Q, B, T
+// (S = T / (B * Q)) that are combined with a few balanced multiplications per level, so the
+// cost is a product tree again and only one division happens at the very end.
+//
+// In parallel mode (see Parallelism) both halves of big ranges are computed at the same time.
+public final class BinarySplitting {
+    // ranges with at least this many terms get their halves computed as parallel tasks
+    private static final int PARALLEL_TERMS = 256;
+
+    // the terms of a series, n goes from 0 up; a and b default to 1
+    public interface Series {
+        AInteger p(long n);
+
+        AInteger q(long n);
+
+        default AInteger a(long n) {
+            return new AInteger(1);
+        }
+
+        default AInteger b(long n) {
+            return new AInteger(1);
+        }
+    }
+
+    // exact partial sum of the terms from..to-1: it equals t / (b * q), and p is the product of the p(n)
+    public static final class Result {
+        public final AInteger p, q, b, t;
+
+        Result(AInteger p, AInteger q, AInteger b, AInteger t) {
+            this.p = p;
+            this.q = q;
+            this.b = b;
+            this.t = t;
+        }
+
+        // t / (b * q) with mc.getPrecision() significant digits
+        public AFloat toAFloat(PrecisionContext mc) {
+            AInteger denominator = b.multiply(q);
+            return new AFloat(t.abs(), 0, t.isNegative).divide(
+                    new AFloat(denominator.abs(), 0, denominator.isNegative), mc);
+        }
+    }
+
+    private BinarySplitting() {
+    }
+
+    // sum of the first terms terms, rounded to mc
+    public static AFloat sum(Series series, long terms, PrecisionContext mc) {
+        return evaluate(series, 0, terms).toAFloat(mc);
+    }
+
+    // P, Q, B, T of the terms from..to-1 (from < to)
+    public static Result evaluate(Series series, long from, long to) {
+        if (from >= to)
+            throw new IllegalArgumentException("Empty range of terms");
+        return split(series, from, to);
+    }
+
+    private static Result split(Series s, long from, long to) {
+        if (to - from == 1) {
+            AInteger p = s.p(from);
+            return new Result(p, s.q(from), s.b(from), s.a(from).multiply(p));
+        }
+
+        long mid = (from + to) >>> 1;
+        Result left, right;
+        if (Parallelism.getLevel() > 1 && to - from >= PARALLEL_TERMS) {
+            List<Result> halves = Parallelism.invokeAll(List.<Callable<Result>>of(
+                    () -> split(s, from, mid),
+                    () -> split(s, mid, to)));
+            left = halves.get(0);
+            right = halves.get(1);
+        } else {
+            left = split(s, from, mid);
+            right = split(s, mid, to);
+        }
+
+        // P = Pl * Pr, Q = Ql * Qr, B = Bl * Br, T = Br * Qr * Tl + Bl * Pl * Tr
+        AInteger t = right.b.multiply(right.q).multiply(left.t).add(left.b.multiply(left.p).multiply(right.t));
+        return new Result(left.p.multiply(right.p), left.q.multiply(right.q), left.b.multiply(right.b), t);
+    }
+}
@@ -0,0 +1,136 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+
+// Big products: n!, binomial coefficients and the product of any collection of AIntegers.
+// Multiplying left to right (result = result.multiply(x)) is quadratic because one side keeps
+// growing while the other stays tiny, so everything here goes through a product tree: the
+// factors are split into two halves of about the same size (in digits), each half is
+// multiplied the same way and only the two halves are multiplied at the end. That way the big
+// multiplications always get balanced operands, which is where Karatsuba / Toom-3 / NTT shine.
+// Small factors are first packed together into numbers of two digits (base 10^9).
+//
+// In parallel mode (see Parallelism) the two halves of big subtrees are computed at the same time.
+public final class Combinatorics {
+    // largest n for which binomial sieves the primes up to n (one bit per number)
+    private static final int SIEVE_LIMIT = 1 << 28;
+    private static final long LEAF_LIMIT = (long) AInteger.BASE * AInteger.BASE; // 2 digits
+
+    private Combinatorics() {
+    }
+
+    // n!
+    public static AInteger factorial(int n) {
+        if (n < 0)
+            throw new IllegalArgumentException("Factorial of a negative number");
+        Packer factors = new Packer();
+        for (int i = 2; i <= n; i++)
+            factors.add(i);
+        return factors.product();
+    }
+
+    // n choose k, 0 if k < 0 or k > n
+    public static AInteger binomial(int n, int k) {
+        if (n < 0)
+            throw new IllegalArgumentException("Binomial coefficient of a negative number");
+        if (k < 0 || k > n)
+            return new AInteger();
+        k = Math.min(k, n - k);
+        if (k == 0)
+            return new AInteger(1);
+
+        if (k < 32 || n > SIEVE_LIMIT) {
+            // (n - k + 1) * ... * n / k!, the division is exact
+            Packer factors = new Packer();
+            for (int i = n - k + 1; i <= n && i > 0; i++)
+                factors.add(i);
+            return factors.product().divide(factorial(k));
+        }
+
+        // Otherwise by its prime factorization, no division at all: the exponent of p is the number
+        // of borrows when subtracting k from n in base p (Kummer), i.e. the sum over p^i of
+        // floor(n / p^i) - floor(k / p^i) - floor((n - k) / p^i)
+        BitSet composite = new BitSet(n + 1);
+        Packer factors = new Packer();
+        for (int p = 2; p <= n; p = composite.nextClearBit(p + 1)) {
+            if ((long) p * p <= n) {
+                for (int m = p * p; m <= n && m > 0; m += p)
+                    composite.set(m);
+            }
+            int power = 1;
+            for (long pi = p; pi <= n; pi *= p) {
+                if (n / pi - k / pi - (n - k) / pi > 0)
+                    power *= p; // p^e <= n, never overflows
+            }
+            if (power > 1)
+                factors.add(power);
+        }
+        return factors.product();
+    }
+
+    // product of all numbers in the collection, 1 for an empty one
+    public static AInteger productOf(Collection<AInteger> numbers) {
+        AInteger[] factors = numbers.toArray(new AInteger[0]);
+        if (factors.length == 0)
+            return new AInteger(1);
+        if (factors.length == 1)
+            return new AInteger(factors[0]);
+        long[] prefix = new long[factors.length + 1]; // prefix[i] = digits of factors[0..i)
+        for (int i = 0; i < factors.length; i++) {
+            if (factors[i].isZero())
+                return new AInteger();
+            prefix[i + 1] = prefix[i] + factors[i].value.length;
+        }
+        return product(factors, prefix, 0, factors.length);
+    }
+
+    // product of factors[from..to), split where half of the digits are on each side
+    private static AInteger product(AInteger[] factors, long[] prefix, int from, int to) {
+        if (to - from == 1)
+            return factors[from];
+        if (to - from == 2)
+            return factors[from].multiply(factors[from + 1]);
+
+        long half = (prefix[from] + prefix[to]) / 2;
+        int mid = Arrays.binarySearch(prefix, from + 1, to, half);
+        if (mid < 0)
+            mid = -mid - 1;
+        mid = Math.max(from + 1, Math.min(to - 1, mid));
+
+        int m = mid;
+        if (Parallelism.enabled((int) Math.min(Integer.MAX_VALUE, (prefix[to] - prefix[from]) / 2))) {
+            List<AInteger> halves = Parallelism.invokeAll(List.<Callable<AInteger>>of(
+                    () -> product(factors, prefix, from, m),
+                    () -> product(factors, prefix, m, to)));
+            return halves.get(0).multiply(halves.get(1));
+        }
+        return product(factors, prefix, from, m).multiply(product(factors, prefix, m, to));
+    }
+
+    // collects positive int factors, multiplying neighbours together in a long as long as
+    // the result stays below 10^18, so the tree starts with two-digit leaves
+    private static final class Packer {
+        private final List<AInteger> leaves = new ArrayList<>();
+        private long current = 1;
+
+        void add(int factor) {
+            if (current > (LEAF_LIMIT - 1) / factor)
+                flush();
+            current *= factor;
+        }
+
+        AInteger product() {
+            flush();
+            return productOf(leaves);
+        }
+
+        private void flush() {
+            if (current == 1)
+                return;
+            int low = (int) (current % AInteger.BASE), high = (int) (current / AInteger.BASE);
+            leaves.add(new AInteger(high == 0 ? new int[] { low } : new int[] { low, high }, false));
+            current = 1;
+        }
+    }
+}
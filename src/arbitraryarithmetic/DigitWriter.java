@@ -0,0 +1,98 @@
+package arbitraryarithmetic;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.util.*;
+
+// Writes the decimal digits of AInteger / AFloat magnitudes to an Appendable or an OutputStream,
+// a CHUNK of characters at a time (behind the writeTo methods). Printing a number with millions
+// of digits then takes a few KB on top of the number itself, instead of a byte array and a String
+// of its full length. The digits are read straight from the base 10^9 limbs, so any range of
+// them (like the 30 after the point of an AFloat) costs only its own length.
+final class DigitWriter {
+    private static final int CHUNK = 8192;
+
+    private final Appendable text; // exactly one of text / bytes is set
+    private final OutputStream bytes;
+    private final byte[] buf = new byte[CHUNK];
+    private final byte[] limbDigits = new byte[AInteger.BASE_DIGITS];
+    private char[] chars; // buf as chars, only for an Appendable
+    private int n; // bytes in buf
+
+    DigitWriter(Appendable out) {
+        this.text = Objects.requireNonNull(out);
+        this.bytes = null;
+    }
+
+    DigitWriter(OutputStream out) {
+        this.text = null;
+        this.bytes = Objects.requireNonNull(out);
+    }
+
+    void put(char c) throws IOException {
+        if (n == CHUNK)
+            drain();
+        buf[n++] = (byte) c;
+    }
+
+    void zeros(long count) throws IOException {
+        while (count > 0) {
+            if (n == CHUNK)
+                drain();
+            int k = (int) Math.min(count, CHUNK - n);
+            Arrays.fill(buf, n, n + k, (byte) '0');
+            n += k;
+            count -= k;
+        }
+    }
+
+    // the decimal digits of the magnitude a from position high down to low (0 is the ones digit),
+    // positions above the top digit or below 0 come out as '0'
+    void digits(int[] a, long high, long low) throws IOException {
+        int length = AInteger.decimalLength(a);
+        long e = high;
+        if (e >= length) { // leading zeros
+            long top = Math.max(length - 1, low - 1);
+            zeros(e - top);
+            e = top;
+        }
+        while (e >= low && e >= 0) {
+            int i = (int) (e / AInteger.BASE_DIGITS);
+            int limb = a[i];
+            for (int k = 0; k < AInteger.BASE_DIGITS; k++) { // least significant first
+                limbDigits[k] = (byte) ('0' + limb % 10);
+                limb /= 10;
+            }
+            for (int j = (int) (e - (long) i * AInteger.BASE_DIGITS); j >= 0 && e >= low; j--, e--) {
+                if (n == CHUNK)
+                    drain();
+                buf[n++] = limbDigits[j];
+            }
+        }
+        zeros(e - low + 1); // trailing zeros below the ones
+    }
+
+    // hands on what is buffered, the target itself is not flushed
+    void flush() throws IOException {
+        if (n > 0)
+            drain();
+    }
+
+    private void drain() throws IOException {
+        if (bytes != null) {
+            bytes.write(buf, 0, n);
+        } else {
+            if (chars == null)
+                chars = new char[CHUNK];
+            for (int i = 0; i < n; i++)
+                chars[i] = (char) buf[i];
+            if (text instanceof Writer)
+                ((Writer) text).write(chars, 0, n);
+            else if (text instanceof StringBuilder)
+                ((StringBuilder) text).append(chars, 0, n);
+            else
+                text.append(CharBuffer.wrap(chars, 0, n));
+        }
+        n = 0;
+    }
+}
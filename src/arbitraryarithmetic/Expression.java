@@ -0,0 +1,401 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+
+// Arithmetic expressions over AInteger or AFloat, for example
+//   Expression e = Expression.compile("(a + b) * (a + b) - 123456789012345678901234567890 % c");
+//   AInteger r = e.evaluateInteger(Map.of("a", x, "b", y, "c", z));
+//
+// Grammar (usual precedence, left associative):
+//   expr    := term (('+' | '-') term)*
+//   term    := unary (('*' | '/' | '%') unary)*
+//   unary   := ('-' | '+') unary | primary
+//   primary := number | name | name '(' expr (',' expr)* ')' | '(' expr ')'
+// Functions: abs(x), min(x, y), max(x, y), sqrt(x). In int mode '/' rounds towards zero and '%' is the
+// matching remainder and sqrt is the integer square root, in float mode '/' and sqrt follow
+// AFloat.divide / AFloat.sqrt (or the PrecisionContext).
+//
+// compile turns the text into a DAG: equal subexpressions (also a + b vs b + a) become one node,
+// so evaluating it computes every shared part only once. Number literals are parsed once per
+// mode and kept in binary form, and so is everything that only depends on literals, so a
+// compiled Expression can be evaluated over and over with different variables cheaply.
+// A compiled Expression is immutable (apart from those caches) and safe to share between threads.
+public final class Expression {
+    private enum Op {
+        CONSTANT(0), VARIABLE(0), ADD(2), SUBTRACT(2), MULTIPLY(2), DIVIDE(2), REMAINDER(2), NEGATE(1),
+        ABS(1), MIN(2), MAX(2), SQRT(1);
+
+        final int arity;
+
+        Op(int arity) {
+            this.arity = arity;
+        }
+
+        boolean isCommutative() {
+            return this == ADD || this == MULTIPLY || this == MIN || this == MAX;
+        }
+    }
+
+    private static final Map<String, Op> FUNCTIONS = Map.of("abs", Op.ABS, "min", Op.MIN, "max", Op.MAX, "sqrt", Op.SQRT);
+
+    // key of cached values computed in int mode (float mode uses the PrecisionContext as key)
+    private static final Object INTEGER_MODE = new Object();
+
+    private static final class Node {
+        final Op op;
+        final String text; // literal or variable name
+        final int[] args; // indices of the operands, always smaller than the node's own index
+        final boolean constant; // depends on literals only
+        volatile Cached cache; // value of a constant node, per mode
+
+        Node(Op op, String text, int[] args, boolean constant) {
+            this.op = op;
+            this.text = text;
+            this.args = args;
+            this.constant = constant;
+        }
+    }
+
+    private static final class Cached {
+        final Object mode;
+        final Object value;
+
+        Cached(Object mode, Object value) {
+            this.mode = mode;
+            this.value = value;
+        }
+    }
+
+    private final String source;
+    private final Node[] nodes; // children before parents, the root is the last one
+    private final int[] lastUse; // index of the last node that reads node i
+    private final Set<String> variables;
+
+    private Expression(String source, List<Node> nodes) {
+        this.source = source;
+        this.nodes = nodes.toArray(new Node[0]);
+        this.lastUse = new int[this.nodes.length];
+        Set<String> names = new TreeSet<>();
+        for (int i = 0; i < this.nodes.length; i++) {
+            for (int arg : this.nodes[i].args)
+                lastUse[arg] = i;
+            if (this.nodes[i].op == Op.VARIABLE)
+                names.add(this.nodes[i].text);
+        }
+        lastUse[this.nodes.length - 1] = this.nodes.length;
+        this.variables = Collections.unmodifiableSet(names);
+    }
+
+    // parse + build the DAG, IllegalArgumentException on syntax errors
+    public static Expression compile(String source) {
+        if (source == null)
+            throw new IllegalArgumentException("Empty expression");
+        return new Parser(source).parse();
+    }
+
+    // names of all variables the expression uses
+    public Set<String> variables() {
+        return variables;
+    }
+
+    // number of distinct subexpressions (nodes of the DAG)
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    public AInteger evaluateInteger() {
+        return evaluateInteger(Collections.emptyMap());
+    }
+
+    public AInteger evaluateInteger(Map<String, AInteger> variables) {
+        return evaluate(INTEGER, variables, INTEGER_MODE);
+    }
+
+    public AFloat evaluateFloat() {
+        return evaluateFloat(Collections.emptyMap(), PrecisionContext.UNLIMITED);
+    }
+
+    public AFloat evaluateFloat(Map<String, AFloat> variables) {
+        return evaluateFloat(variables, PrecisionContext.UNLIMITED);
+    }
+
+    public AFloat evaluateFloat(Map<String, AFloat> variables, PrecisionContext mc) {
+        return evaluate(new FloatArithmetic(mc), variables, mc);
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    // walks the nodes in order, every node is computed exactly once; values are dropped as soon
+    // as their last reader is done so big intermediates don't pile up
+    @SuppressWarnings("unchecked")
+    private <T> T evaluate(Arithmetic<T> arithmetic, Map<String, T> variables, Object mode) {
+        Object[] values = new Object[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            Node node = nodes[i];
+            Cached cached = node.constant ? node.cache : null;
+            Object value;
+            if (cached != null && cached.mode.equals(mode)) {
+                value = cached.value;
+            } else {
+                switch (node.op) {
+                    case CONSTANT:
+                        value = arithmetic.parse(node.text);
+                        break;
+                    case VARIABLE:
+                        value = variables.get(node.text);
+                        if (value == null)
+                            throw new IllegalArgumentException("No value for variable " + node.text);
+                        break;
+                    default:
+                        T a = (T) values[node.args[0]];
+                        T b = node.args.length > 1 ? (T) values[node.args[1]] : null;
+                        value = arithmetic.apply(node.op, a, b);
+                }
+                if (node.constant)
+                    node.cache = new Cached(mode, value);
+            }
+            values[i] = value;
+            for (int arg : node.args) {
+                if (lastUse[arg] == i)
+                    values[arg] = null;
+            }
+        }
+        return (T) values[nodes.length - 1];
+    }
+
+    private interface Arithmetic<T> {
+        T parse(String literal);
+
+        T apply(Op op, T a, T b); // b is null for unary operations
+    }
+
+    private static final Arithmetic<AInteger> INTEGER = new Arithmetic<AInteger>() {
+        @Override
+        public AInteger parse(String literal) {
+            return new AInteger(literal);
+        }
+
+        @Override
+        public AInteger apply(Op op, AInteger a, AInteger b) {
+            switch (op) {
+                case ADD:
+                    return a.add(b);
+                case SUBTRACT:
+                    return a.subtract(b);
+                case MULTIPLY:
+                    return a.multiply(b);
+                case DIVIDE:
+                    return a.divide(b);
+                case REMAINDER:
+                    return a.divideAndRemainder(b)[1];
+                case NEGATE:
+                    return a.negate();
+                case ABS:
+                    return a.abs();
+                case MIN:
+                    return a.compareTo(b) <= 0 ? a : b;
+                case MAX:
+                    return a.compareTo(b) >= 0 ? a : b;
+                case SQRT:
+                    return a.sqrt();
+                default:
+                    throw new IllegalStateException(op.name());
+            }
+        }
+    };
+
+    private static final class FloatArithmetic implements Arithmetic<AFloat> {
+        private final PrecisionContext mc;
+
+        FloatArithmetic(PrecisionContext mc) {
+            this.mc = mc;
+        }
+
+        @Override
+        public AFloat parse(String literal) {
+            return new AFloat(literal);
+        }
+
+        @Override
+        public AFloat apply(Op op, AFloat a, AFloat b) {
+            switch (op) {
+                case ADD:
+                    return a.add(b, mc);
+                case SUBTRACT:
+                    return a.subtract(b, mc);
+                case MULTIPLY:
+                    return a.multiply(b, mc);
+                case DIVIDE:
+                    return a.divide(b, mc);
+                case REMAINDER:
+                    throw new IllegalArgumentException("% is only defined for int");
+                case NEGATE:
+                    return a.negate();
+                case ABS:
+                    return a.abs();
+                case MIN:
+                    return a.compareTo(b) <= 0 ? a : b;
+                case MAX:
+                    return a.compareTo(b) >= 0 ? a : b;
+                case SQRT:
+                    return a.sqrt(mc);
+                default:
+                    throw new IllegalStateException(op.name());
+            }
+        }
+    }
+
+    // recursive descent parser that hash-conses the nodes while it builds them
+    private static final class Parser {
+        private final String s;
+        private int pos;
+        private final List<Node> nodes = new ArrayList<>();
+        private final Map<String, Integer> index = new HashMap<>(); // node key -> node index
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Expression parse() {
+            parseExpr();
+            skipSpaces();
+            if (pos < s.length())
+                throw error("Unexpected '" + s.charAt(pos) + "'");
+            return new Expression(s, nodes);
+        }
+
+        private int parseExpr() {
+            int left = parseTerm();
+            while (true) {
+                if (accept('+'))
+                    left = node(Op.ADD, null, left, parseTerm());
+                else if (accept('-'))
+                    left = node(Op.SUBTRACT, null, left, parseTerm());
+                else
+                    return left;
+            }
+        }
+
+        private int parseTerm() {
+            int left = parseUnary();
+            while (true) {
+                if (accept('*'))
+                    left = node(Op.MULTIPLY, null, left, parseUnary());
+                else if (accept('/'))
+                    left = node(Op.DIVIDE, null, left, parseUnary());
+                else if (accept('%'))
+                    left = node(Op.REMAINDER, null, left, parseUnary());
+                else
+                    return left;
+            }
+        }
+
+        private int parseUnary() {
+            if (accept('-'))
+                return node(Op.NEGATE, null, parseUnary());
+            if (accept('+'))
+                return parseUnary();
+            return parsePrimary();
+        }
+
+        private int parsePrimary() {
+            skipSpaces();
+            if (pos >= s.length())
+                throw error("Unexpected end");
+            char c = s.charAt(pos);
+
+            if (accept('(')) {
+                int inner = parseExpr();
+                expect(')');
+                return inner;
+            }
+
+            if (isDigit(c) || c == '.') {
+                int start = pos;
+                while (pos < s.length() && (isDigit(s.charAt(pos)) || s.charAt(pos) == '.'))
+                    pos++;
+                if (pos < s.length() && (s.charAt(pos) == 'e' || s.charAt(pos) == 'E')) {
+                    pos++;
+                    if (pos < s.length() && (s.charAt(pos) == '+' || s.charAt(pos) == '-'))
+                        pos++;
+                    while (pos < s.length() && isDigit(s.charAt(pos)))
+                        pos++;
+                }
+                return node(Op.CONSTANT, s.substring(start, pos));
+            }
+
+            if (Character.isLetter(c) || c == '_') {
+                int start = pos;
+                while (pos < s.length() && (Character.isLetterOrDigit(s.charAt(pos)) || s.charAt(pos) == '_'))
+                    pos++;
+                String name = s.substring(start, pos);
+                if (!accept('('))
+                    return node(Op.VARIABLE, name);
+
+                Op function = FUNCTIONS.get(name);
+                if (function == null)
+                    throw error("Unknown function " + name);
+                int[] args = new int[function.arity];
+                for (int i = 0; i < args.length; i++) {
+                    if (i > 0)
+                        expect(',');
+                    args[i] = parseExpr();
+                }
+                expect(')');
+                return node(function, null, args);
+            }
+
+            throw error("Unexpected '" + c + "'");
+        }
+
+        // index of the node (op, text, args), reusing an equal node when there is one
+        private int node(Op op, String text, int... args) {
+            if (op.isCommutative() && args[0] > args[1])
+                args = new int[] { args[1], args[0] };
+            String key = op.name() + ':' + (text == null ? "" : text) + ':' + Arrays.toString(args);
+            Integer existing = index.get(key);
+            if (existing != null)
+                return existing;
+
+            boolean constant = op == Op.CONSTANT;
+            if (op != Op.VARIABLE && args.length > 0) {
+                constant = true;
+                for (int arg : args)
+                    constant &= nodes.get(arg).constant;
+            }
+            nodes.add(new Node(op, text, args, constant));
+            index.put(key, nodes.size() - 1);
+            return nodes.size() - 1;
+        }
+
+        private boolean accept(char c) {
+            skipSpaces();
+            if (pos < s.length() && s.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!accept(c))
+                throw error("Expected '" + c + "'");
+        }
+
+        private void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos)))
+                pos++;
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos + " in \"" + s + "\"");
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+
+// Greatest common divisor (and the extended version behind modInverse) for AInteger digit arrays.
+//
+// Plain Euclid needs one long division per quotient, i.e. about one decimal digit of progress
+// per pass over the numbers. Instead:
+//   - Lehmer: run Euclid on the leading two digits (base 10^9) only, in longs, as long as the
+//     quotients are guaranteed to be the same as for the full numbers (Knuth's Algorithm L),
+//     then apply all of those steps at once as a 2x2 matrix: a' = A*a + B*b, b' = C*a + D*b.
+//     That's one linear pass for about 9 decimal digits of progress.
+//   - Half-GCD for huge inputs: the quotients of the top half of two numbers are the first
+//     quotients of the numbers themselves, so the top half is reduced recursively, the matrix
+//     of those steps is applied to the full numbers with fast multiplications, and that is done
+//     a second time for the rest. Halving the size costs a few multiplications instead of a
+//     quadratic number of digit operations.
+// Every matrix here has determinant +-1, so applying it (or its inverse) never changes the gcd,
+// even in the rare cases where the top half runs a bit too far; the result just gets fixed up.
+final class Gcd {
+    // size (base 10^9 digits) from which the half-GCD is used
+    static final int HALF_GCD_THRESHOLD = Integer.getInteger("arbitraryarithmetic.halfGcdThreshold", 50);
+
+    // Lehmer cofactors stay below this, so A * x + B * y fits into a long for digits x, y
+    private static final long COFACTOR_LIMIT = AInteger.BASE;
+
+    private Gcd() {
+    }
+
+    // gcd(|a|, |b|)
+    static int[] gcd(int[] a, int[] b) {
+        Pair p = new Pair(a, b, false, false);
+        p.reduceTo(0);
+        return p.a;
+    }
+
+    // {g, x, y} with a * x + b * y = g = gcd(a, b) >= 0
+    static AInteger[] extended(AInteger a, AInteger b) {
+        if (b.isZero())
+            return new AInteger[] { a.abs(), new AInteger(a.signum()), new AInteger() };
+        Pair p = new Pair(a.value, b.value, true, false);
+        p.reduceTo(0);
+
+        // p.xa is the coefficient of |a|, the one of |b| follows from g = |a| * x + |b| * y
+        AInteger g = new AInteger(p.a, false);
+        AInteger x = p.xa;
+        AInteger y = g.subtract(a.abs().multiply(x)).divide(b.abs());
+        return new AInteger[] { g, a.isNegative ? x.negate() : x, b.isNegative ? y.negate() : y };
+    }
+
+    // a pair a >= b >= 0 that is being reduced, optionally with the coefficients of the first
+    // original number (cur = x * |a0| + y * |b0| for some y) and/or the matrix M of all steps
+    // so far ((a0, b0) = M (a, b))
+    private static final class Pair {
+        int[] a, b;
+        AInteger xa, xb; // null unless tracking coefficients
+        Matrix m; // null unless tracking the matrix
+
+        Pair(int[] a, int[] b, boolean coefficients, boolean matrix) {
+            boolean swap = AInteger.compareMagnitude(a, b) < 0;
+            this.a = swap ? b : a;
+            this.b = swap ? a : b;
+            if (coefficients) {
+                xa = new AInteger(swap ? 0 : 1);
+                xb = new AInteger(swap ? 1 : 0);
+            }
+            if (matrix)
+                m = Matrix.identity();
+        }
+
+        // runs Euclid until b has at most size digits (0 -> until b is 0)
+        void reduceTo(int size) {
+            while (!isZero(b) && b.length > size) {
+                if (size == 0 && xa == null && m == null && a.length == 1) {
+                    a = new int[] { (int) gcd(a[0], b[0]) };
+                    b = new int[] { 0 };
+                    return;
+                }
+                if (m == null && b.length >= HALF_GCD_THRESHOLD && halfGcdStep())
+                    continue;
+                if (!lehmerStep())
+                    euclidStep();
+            }
+        }
+
+        // one half-GCD reduction of the whole pair, false if it did not make b smaller
+        private boolean halfGcdStep() {
+            Reduction r = halfGcd(a, b);
+            if (AInteger.compareMagnitude(r.b, b) >= 0)
+                return false;
+            if (xa != null) {
+                AInteger[] x = r.m.applyInverse(xa, xb);
+                xa = x[0];
+                xb = x[1];
+            }
+            a = r.a;
+            b = r.b;
+            return true;
+        }
+
+        // (a, b) -> (b, a mod b)
+        void euclidStep() {
+            int[][] qr = AInteger.divideMagnitude(a, b);
+            if (xa != null) {
+                AInteger next = xa.subtract(new AInteger(qr[0], false).multiply(xb));
+                xa = xb;
+                xb = next;
+            }
+            if (m != null)
+                m = m.timesStep(new AInteger(qr[0], false));
+            a = b;
+            b = qr[1];
+        }
+
+        // Knuth's Algorithm L on the leading two digits, false if it could not do anything
+        boolean lehmerStep() {
+            int n = a.length;
+            if (n < 2 || b.length < n - 1)
+                return false;
+            long x = a[n - 1] * (long) AInteger.BASE + a[n - 2];
+            long y = (b.length == n ? b[n - 1] * (long) AInteger.BASE : 0) + b[n - 2];
+
+            long A = 1, B = 0, C = 0, D = 1;
+            while (y + C != 0 && y + D != 0) {
+                long q = (x + A) / (y + C);
+                if (q != (x + B) / (y + D) || q >= COFACTOR_LIMIT)
+                    break;
+                long nextC = A - q * C, nextD = B - q * D;
+                if (Math.abs(nextC) >= COFACTOR_LIMIT || Math.abs(nextD) >= COFACTOR_LIMIT)
+                    break;
+                long t = x - q * y;
+                A = C;
+                B = D;
+                C = nextC;
+                D = nextD;
+                x = y;
+                y = t;
+            }
+            if (B == 0)
+                return false;
+
+            int[] nextA = combine(a, b, A, B), nextB = combine(a, b, C, D);
+            if (xa != null) {
+                AInteger nextXa = xa.multiply(new AInteger((int) A)).add(xb.multiply(new AInteger((int) B)));
+                xb = xa.multiply(new AInteger((int) C)).add(xb.multiply(new AInteger((int) D)));
+                xa = nextXa;
+            }
+            if (m != null)
+                m = m.timesInverse(A, B, C, D);
+            a = nextA;
+            b = nextB;
+            return true;
+        }
+    }
+
+    // p * a + q * b for cofactors |p|, |q| < 10^9, the result is known to be >= 0
+    private static int[] combine(int[] a, int[] b, long p, long q) {
+        int[] r = new int[a.length + 1];
+        long carry = 0;
+        for (int i = 0; i < a.length; i++) {
+            long cur = p * a[i] + (i < b.length ? q * b[i] : 0) + carry; // |cur| < 2 * 10^18 + carry
+            carry = Math.floorDiv(cur, AInteger.BASE);
+            r[i] = (int) (cur - carry * AInteger.BASE);
+        }
+        r[a.length] = (int) carry;
+        return AInteger.trim(r, r.length);
+    }
+
+    private static boolean isZero(int[] a) {
+        return a.length == 1 && a[0] == 0;
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    // result of a half-GCD: (a0, b0) = m (a, b) with a >= b >= 0
+    private static final class Reduction {
+        final Matrix m;
+        final int[] a, b;
+
+        Reduction(Matrix m, int[] a, int[] b) {
+            this.m = m;
+            this.a = a;
+            this.b = b;
+        }
+    }
+
+    // Reduces a >= b until b has about half of a's digits (Thull-Yap / Moller style):
+    // the top halves are reduced recursively, the steps are applied to the full numbers,
+    // then one Euclid step and a second recursive round on what is left above the target.
+    static Reduction halfGcd(int[] a, int[] b) {
+        int n = a.length, s = n / 2 + 1;
+        if (b.length <= s)
+            return new Reduction(Matrix.identity(), a, b);
+        if (n < HALF_GCD_THRESHOLD) {
+            Pair p = new Pair(a, b, false, true);
+            p.reduceTo(s);
+            return new Reduction(p.m, p.a, p.b);
+        }
+
+        int low = n / 2;
+        Reduction first = halfGcd(AInteger.upperDigits(a, low), AInteger.upperDigits(b, low));
+        Reduction cur = applyInverse(Matrix.identity(), first.m, a, b);
+        if (cur.b.length <= s || isZero(cur.b))
+            return cur;
+
+        int[][] qr = AInteger.divideMagnitude(cur.a, cur.b);
+        cur = new Reduction(cur.m.timesStep(new AInteger(qr[0], false)), cur.b, qr[1]);
+        if (cur.b.length <= s || isZero(cur.b))
+            return cur;
+
+        // the part above the target has l - s digits, so reduce the top 2 (l - s) digits
+        int l = cur.a.length, drop = 2 * s - l;
+        if (drop < 0 || l - drop >= n)
+            return cur;
+        Reduction second = halfGcd(AInteger.upperDigits(cur.a, drop), AInteger.upperDigits(cur.b, drop));
+        return applyInverse(cur.m, second.m, cur.a, cur.b);
+    }
+
+    // (x, y) = step^-1 (a, b), made non-negative and ordered (adjusting step so that
+    // (a, b) = step (x, y) still holds), returned with the matrix prefix * step
+    private static Reduction applyInverse(Matrix prefix, Matrix step, int[] a, int[] b) {
+        AInteger[] xy = step.applyInverse(new AInteger(a, false), new AInteger(b, false));
+        Matrix m = step;
+        if (xy[0].isNegative) {
+            m = m.negateColumn(0);
+            xy[0] = xy[0].negate();
+        }
+        if (xy[1].isNegative) {
+            m = m.negateColumn(1);
+            xy[1] = xy[1].negate();
+        }
+        if (AInteger.compareMagnitude(xy[0].value, xy[1].value) < 0) {
+            m = m.swapColumns();
+            AInteger t = xy[0];
+            xy[0] = xy[1];
+            xy[1] = t;
+        }
+        return new Reduction(prefix.times(m), xy[0].value, xy[1].value);
+    }
+
+    // 2x2 matrix of AIntegers with determinant det = +-1
+    private static final class Matrix {
+        final AInteger m00, m01, m10, m11;
+        final int det;
+
+        Matrix(AInteger m00, AInteger m01, AInteger m10, AInteger m11, int det) {
+            this.m00 = m00;
+            this.m01 = m01;
+            this.m10 = m10;
+            this.m11 = m11;
+            this.det = det;
+        }
+
+        static Matrix identity() {
+            return new Matrix(new AInteger(1), new AInteger(), new AInteger(), new AInteger(1), 1);
+        }
+
+        Matrix times(Matrix o) {
+            return new Matrix(m00.multiply(o.m00).add(m01.multiply(o.m10)), m00.multiply(o.m01).add(m01.multiply(o.m11)),
+                    m10.multiply(o.m00).add(m11.multiply(o.m10)), m10.multiply(o.m01).add(m11.multiply(o.m11)),
+                    det * o.det);
+        }
+
+        // this * [[q, 1], [1, 0]], one Euclid step
+        Matrix timesStep(AInteger q) {
+            return new Matrix(m00.multiply(q).add(m01), m00, m10.multiply(q).add(m11), m10, -det);
+        }
+
+        // this * [[A, B], [C, D]]^-1 for a Lehmer step
+        Matrix timesInverse(long A, long B, long C, long D) {
+            int d = A * D - B * C > 0 ? 1 : -1;
+            AInteger a = new AInteger((int) (d * A)), b = new AInteger((int) (d * B));
+            AInteger c = new AInteger((int) (d * C)), dd = new AInteger((int) (d * D));
+            // [[A, B], [C, D]]^-1 = d * [[D, -B], [-C, A]]
+            return new Matrix(m00.multiply(dd).subtract(m01.multiply(c)), m01.multiply(a).subtract(m00.multiply(b)),
+                    m10.multiply(dd).subtract(m11.multiply(c)), m11.multiply(a).subtract(m10.multiply(b)), det * d);
+        }
+
+        // this^-1 (u, v) = det * (m11 u - m01 v, m00 v - m10 u)
+        AInteger[] applyInverse(AInteger u, AInteger v) {
+            AInteger x = m11.multiply(u).subtract(m01.multiply(v));
+            AInteger y = m00.multiply(v).subtract(m10.multiply(u));
+            return det > 0 ? new AInteger[] { x, y } : new AInteger[] { x.negate(), y.negate() };
+        }
+
+        Matrix negateColumn(int column) {
+            return column == 0 ? new Matrix(m00.negate(), m01, m10.negate(), m11, -det)
+                    : new Matrix(m00, m01.negate(), m10, m11.negate(), -det);
+        }
+
+        Matrix swapColumns() {
+            return new Matrix(m01, m00, m11, m10, -det);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import jdk.jfr.*;
+
+// Opt-in instrumentation of the hot paths, to see which operations and operand sizes the time
+// goes to (for tuning the thresholds in AInteger, or finding the input that makes a job slow).
+// For every Operation it counts the calls and keeps two histograms: operand size (base 10^9
+// digits of the bigger operand, powers of two) and latency (8 steps per power of two, so the
+// percentiles are within about 6%).
+//
+// Off by default, -Darbitraryarithmetic.metrics=true or Metrics.setEnabled(true) turns it on.
+// While it is off an instrumented call costs one volatile read:
+//   long start = Metrics.start();
+//   ...
+//   Metrics.record(Metrics.Operation.INTEGER_MULTIPLY, start, size);
+// Calls that take longer than -Darbitraryarithmetic.slowOperationMicros (default 1000) are
+// also committed as "arbitraryarithmetic.SlowOperation" Flight Recorder events, so they show up
+// in a recording (java -XX:StartFlightRecording ...) with the operation and the operand size.
+//
+// Metrics.snapshot() copies the numbers, its toString is the table MyInfArith --metrics prints.
+public final class Metrics {
+    public enum Operation {
+        INTEGER_PARSE("AInteger.parse"),
+        INTEGER_TO_STRING("AInteger.toString"),
+        INTEGER_ADD("AInteger.add"),
+        INTEGER_SUBTRACT("AInteger.subtract"),
+        INTEGER_MULTIPLY("AInteger.multiply"),
+        INTEGER_DIVIDE("AInteger.divide"),
+        INTEGER_POW("AInteger.pow"),
+        INTEGER_POW10("AInteger.pow10"), // scaleByPowerOfTen / divideByPowerOfTen
+        FLOAT_PARSE("AFloat.parse"),
+        FLOAT_TO_STRING("AFloat.toString"),
+        FLOAT_ADD("AFloat.add"),
+        FLOAT_MULTIPLY("AFloat.multiply"),
+        FLOAT_DIVIDE("AFloat.divide"),
+        FLOAT_SQRT("AFloat.sqrt"),
+        FLOAT_STRIP_ZEROS("AFloat.stripZeros");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    static final long SLOW_NANOS = Long.getLong("arbitraryarithmetic.slowOperationMicros", 1000) * 1000;
+
+    // size buckets: 0 -> 0 digits, b -> 2^(b-1) .. 2^b - 1 digits
+    static final int SIZE_BUCKETS = 33;
+    // latency buckets: values below 8 exactly, above that 8 buckets per power of two
+    static final int LATENCY_BUCKETS = 61 * 8;
+
+    private static volatile boolean enabled = Boolean.getBoolean("arbitraryarithmetic.metrics");
+    private static final Recorder[] RECORDERS = new Recorder[Operation.values().length];
+
+    static {
+        for (int i = 0; i < RECORDERS.length; i++)
+            RECORDERS[i] = new Recorder();
+    }
+
+    private Metrics() {
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    // forgets everything recorded so far
+    public static void reset() {
+        for (int i = 0; i < RECORDERS.length; i++)
+            RECORDERS[i] = new Recorder();
+    }
+
+    // start time for record, 0 while disabled (record ignores those)
+    static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    static void record(Operation op, long start, int size) {
+        if (start == 0)
+            return;
+        long nanos = System.nanoTime() - start;
+        RECORDERS[op.ordinal()].add(nanos, size);
+        if (nanos >= SLOW_NANOS)
+            SlowOperation.emit(op, size, nanos);
+    }
+
+    public static Snapshot snapshot() {
+        Operation[] ops = Operation.values();
+        Snapshot s = new Snapshot();
+        for (Operation op : ops)
+            s.stats.put(op, RECORDERS[op.ordinal()].copy());
+        return s;
+    }
+
+    static int sizeBucket(int size) {
+        return 32 - Integer.numberOfLeadingZeros(size);
+    }
+
+    static int latencyBucket(long nanos) {
+        if (nanos < 8)
+            return (int) Math.max(nanos, 0);
+        int exp = 63 - Long.numberOfLeadingZeros(nanos); // >= 3
+        return (exp - 2) * 8 + (int) (nanos >>> (exp - 3)) - 8;
+    }
+
+    // smallest value that lands in the latency bucket
+    static long latencyLowerBound(int bucket) {
+        if (bucket < 8)
+            return bucket;
+        int exp = bucket / 8 + 2;
+        return (long) (8 + bucket % 8) << (exp - 3);
+    }
+
+    private static long latencyWidth(int bucket) {
+        return bucket < 8 ? 1 : 1L << (bucket / 8 - 1);
+    }
+
+    // the counters of one operation, updated from any thread without locking
+    private static final class Recorder {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final AtomicLongArray sizes = new AtomicLongArray(SIZE_BUCKETS);
+        final AtomicLongArray latencies = new AtomicLongArray(LATENCY_BUCKETS);
+
+        void add(long nanos, int size) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            sizes.incrementAndGet(sizeBucket(size));
+            latencies.incrementAndGet(latencyBucket(nanos));
+        }
+
+        Stats copy() {
+            long[] s = new long[SIZE_BUCKETS], l = new long[LATENCY_BUCKETS];
+            for (int i = 0; i < s.length; i++)
+                s[i] = sizes.get(i);
+            long n = 0;
+            for (int i = 0; i < l.length; i++)
+                n += l[i] = latencies.get(i);
+            // the count is the sum of the histogram, so percentiles always add up
+            return new Stats(n, totalNanos.sum(), maxNanos.get(), s, l);
+        }
+    }
+
+    // numbers of one operation at the time of the snapshot
+    public static final class Stats {
+        private final long count, totalNanos, maxNanos;
+        private final long[] sizes, latencies;
+
+        Stats(long count, long totalNanos, long maxNanos, long[] sizes, long[] latencies) {
+            this.count = count;
+            this.totalNanos = totalNanos;
+            this.maxNanos = maxNanos;
+            this.sizes = sizes;
+            this.latencies = latencies;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public long totalNanos() {
+            return totalNanos;
+        }
+
+        public long maxNanos() {
+            return maxNanos;
+        }
+
+        // latency below which the fraction p (0..1) of the calls stayed, 0 without calls
+        public long percentileNanos(double p) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max((long) Math.ceil(p * count), 1);
+            long seen = 0;
+            for (int i = 0; i < latencies.length; i++) {
+                seen += latencies[i];
+                if (seen >= rank) // middle of the bucket, but never above the real maximum
+                    return Math.min(latencyLowerBound(i) + latencyWidth(i) / 2, maxNanos);
+            }
+            return maxNanos;
+        }
+
+        // calls per operand size: entry b counts sizes 2^(b-1) .. 2^b - 1 (base 10^9 digits)
+        public long[] sizeHistogram() {
+            return sizes.clone();
+        }
+    }
+
+    public static final class Snapshot {
+        private final Map<Operation, Stats> stats = new EnumMap<>(Operation.class);
+
+        public Stats get(Operation op) {
+            return stats.get(op);
+        }
+
+        // one line per operation that was called, times in microseconds
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(String.format("%-20s %10s %12s %10s %10s %10s %10s  %s%n",
+                    "operation", "calls", "total ms", "p50 us", "p90 us", "p99 us", "max us", "digits (base 10^9): calls"));
+            for (Map.Entry<Operation, Stats> e : stats.entrySet()) {
+                Stats s = e.getValue();
+                if (s.count == 0)
+                    continue;
+                sb.append(String.format("%-20s %10d %12.3f %10.1f %10.1f %10.1f %10.1f ", e.getKey(), s.count,
+                        s.totalNanos / 1e6, s.percentileNanos(0.5) / 1e3, s.percentileNanos(0.9) / 1e3,
+                        s.percentileNanos(0.99) / 1e3, s.maxNanos / 1e3));
+                for (int b = 0; b < s.sizes.length; b++) {
+                    if (s.sizes[b] == 0)
+                        continue;
+                    long low = b == 0 ? 0 : 1L << (b - 1), high = b == 0 ? 0 : (1L << b) - 1;
+                    sb.append(' ').append(low == high ? Long.toString(low) : low + "-" + high).append(':').append(s.sizes[b]);
+                }
+                sb.append(System.lineSeparator());
+            }
+            return sb.toString();
+        }
+    }
+
+    // Flight Recorder event for one slow call; only loaded once a call is actually that slow
+    @Name("arbitraryarithmetic.SlowOperation")
+    @Label("Slow Arithmetic Operation")
+    @Category("Arbitrary Arithmetic")
+    @Description("An AInteger / AFloat operation slower than arbitraryarithmetic.slowOperationMicros")
+    @StackTrace(true)
+    static final class SlowOperation extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Operand Size")
+        @Description("Base 10^9 digits of the bigger operand")
+        int size;
+
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long time;
+
+        static void emit(Operation op, int size, long nanos) {
+            SlowOperation event = new SlowOperation();
+            if (!event.isEnabled())
+                return;
+            event.operation = op.toString();
+            event.size = size;
+            event.time = nanos;
+            event.commit();
+        }
+    }
+}
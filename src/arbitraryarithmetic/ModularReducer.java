@@ -0,0 +1,277 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+
+// Fast arithmetic modulo one fixed modulus m, for code that does lots of modular multiplications
+// with the same m (modPow, primality tests, ...). Everything that only depends on m is computed
+// once when the reducer is made, after that a modular multiplication is a multiply plus a
+// reduction that needs no division:
+//   - Montgomery reduction when m is coprime to 10 (our digits are base 10^9 = 2^9 * 5^9, so
+//     that is what "odd" means here). Numbers are kept as x * R mod m with R = 10^(9n).
+//   - Barrett reduction otherwise (m even or a multiple of 5).
+//
+//   ModularReducer r = ModularReducer.of(m);
+//   AInteger x = r.pow(base, exponent);    // = base.modPow(exponent, m)
+//   AInteger y = r.multiply(a, b);         // = a * b mod m
+// A reducer is immutable and can be shared between threads.
+public abstract class ModularReducer {
+    final AInteger modulus;
+    final int n; // digits (base 10^9) of the modulus
+
+    ModularReducer(AInteger modulus) {
+        this.modulus = modulus;
+        this.n = modulus.value.length;
+    }
+
+    // the best reducer for m, ArithmeticException if m <= 0
+    public static ModularReducer of(AInteger m) {
+        if (m.isNegative || m.isZero())
+            throw new ArithmeticException("Modulus not positive");
+        if (m.value[0] % 2 != 0 && m.value[0] % 5 != 0)
+            return new Montgomery(m);
+        return new Barrett(m);
+    }
+
+    public AInteger modulus() {
+        return modulus;
+    }
+
+    // x mod m, always in [0, m)
+    public AInteger reduce(AInteger x) {
+        return x.mod(modulus);
+    }
+
+    // a * b mod m
+    public AInteger multiply(AInteger a, AInteger b) {
+        // toInternal(a) * b reduces to the plain residue for both kinds of reducer
+        return new AInteger(multiplyInternal(toInternal(reduce(a).value), reduce(b).value), false);
+    }
+
+    // base^exponent mod m (a negative exponent uses the inverse of base, if there is one)
+    // by left to right sliding window exponentiation over the binary
+    // digits of the exponent: only the odd powers base^1, base^3, ... base^(2^w - 1) are
+    // precomputed and one multiplication covers up to w bits
+    public AInteger pow(AInteger base, AInteger exponent) {
+        if (n == 1 && modulus.value[0] == 1)
+            return new AInteger();
+        if (exponent.isNegative) {
+            // base^-e = (base^-1)^e
+            base = base.modInverse(modulus);
+            exponent = exponent.negate();
+        }
+        int[] e = binary(exponent.value);
+        int bits = bitLength(e);
+        if (bits == 0)
+            return new AInteger(1);
+
+        int w = bits <= 7 ? 1 : bits <= 25 ? 2 : bits <= 81 ? 3 : bits <= 241 ? 4 : bits <= 673 ? 5 : bits <= 1793 ? 6 : 7;
+        int[][] odd = new int[1 << (w - 1)][]; // odd[i] = base^(2i + 1)
+        odd[0] = toInternal(reduce(base).value);
+        if (odd.length > 1) {
+            int[] square = multiplyInternal(odd[0], odd[0]);
+            for (int i = 1; i < odd.length; i++)
+                odd[i] = multiplyInternal(odd[i - 1], square);
+        }
+
+        int[] result = null; // null -> still 1
+        int i = bits - 1;
+        while (i >= 0) {
+            if (!testBit(e, i)) {
+                if (result != null)
+                    result = multiplyInternal(result, result);
+                i--;
+                continue;
+            }
+            // longest window i..j (at most w bits) that ends in a 1 bit
+            int j = Math.max(0, i - w + 1);
+            while (!testBit(e, j))
+                j++;
+            int window = 0;
+            for (int k = i; k >= j; k--)
+                window = (window << 1) | (testBit(e, k) ? 1 : 0);
+            if (result != null) {
+                for (int k = j; k <= i; k++)
+                    result = multiplyInternal(result, result);
+                result = multiplyInternal(result, odd[window >> 1]);
+            } else {
+                result = odd[window >> 1];
+            }
+            i = j - 1;
+        }
+        return new AInteger(fromInternal(result), false);
+    }
+
+    // residue in [0, m) -> the reducer's own representation
+    abstract int[] toInternal(int[] residue);
+
+    // own representation -> residue in [0, m)
+    abstract int[] fromInternal(int[] x);
+
+    // product of two numbers in the own representation, a == b squares
+    abstract int[] multiplyInternal(int[] a, int[] b);
+
+    // base 10^9 -> base 2^30 (least significant first, trimmed)
+    static int[] binary(int[] decimal) {
+        int[] rest = decimal.clone();
+        int len = rest.length;
+        int[] words = new int[len + 1]; // a base 10^9 digit has less than 30 bits
+        int count = 0;
+        while (len > 1 || rest[0] != 0) {
+            long remainder = 0;
+            for (int i = len - 1; i >= 0; i--) {
+                long cur = remainder * AInteger.BASE + rest[i]; // < 2^30 * 10^9, fits
+                rest[i] = (int) (cur >>> 30);
+                remainder = cur & ((1 << 30) - 1);
+            }
+            words[count++] = (int) remainder;
+            while (len > 1 && rest[len - 1] == 0)
+                len--;
+        }
+        return Arrays.copyOf(words, Math.max(1, count));
+    }
+
+    private static int bitLength(int[] words) {
+        int top = words.length - 1;
+        return words[top] == 0 ? 0 : top * 30 + (32 - Integer.numberOfLeadingZeros(words[top]));
+    }
+
+    private static boolean testBit(int[] words, int bit) {
+        return (words[bit / 30] >>> (bit % 30) & 1) != 0;
+    }
+
+    // Montgomery: x is stored as x * R mod m with R = B^n, and REDC(t) = t / R mod m is
+    // computed with multiplications only. Needs m coprime to the base B = 10^9.
+    private static final class Montgomery extends ModularReducer {
+        private final long mInv; // -m^-1 mod B, for the digit by digit REDC
+        private final int[] mInvFull; // -m^-1 mod R, for the REDC by multiplication (big m only)
+        private final int[] r2; // R^2 mod m
+
+        Montgomery(AInteger m) {
+            super(m);
+            // m * x = 1 mod 10, then Newton steps x = x * (2 - m * x) double the correct digits
+            long m0 = m.value[0], x = 1;
+            while (m0 * x % 10 != 1)
+                x++;
+            for (int i = 0; i < 4; i++)
+                x = x * ((2 - m0 * x % AInteger.BASE + AInteger.BASE) % AInteger.BASE) % AInteger.BASE;
+            mInv = x == 0 ? 0 : AInteger.BASE - x;
+
+            // the digit by digit REDC is quadratic, but below Toom-3 sizes it still beats two multiplications
+            mInvFull = n >= AInteger.TOOM3_THRESHOLD ? negativeInverse(m.value, x) : null;
+            r2 = new AInteger(1).shiftLimbs(2 * n).mod(m).value;
+        }
+
+        // -m^-1 mod B^n, starting from m^-1 mod B; each Newton step doubles the digits
+        private int[] negativeInverse(int[] m, long inv0) {
+            int[] inv = { (int) inv0 };
+            for (int k = 1; k < n;) {
+                k = Math.min(2 * k, n);
+                // e = m * inv mod B^k, inv = inv * (2 - e) = inv * (B^k + 2 - e) mod B^k (e >= 1)
+                int[] e = AInteger.lowerDigits(AInteger.multiplyMagnitude(AInteger.lowerDigits(m, k), inv), k);
+                int[] twoMinusE = AInteger.subMagnitude(AInteger.addMagnitude(powerOfBase(k), new int[] { 2 }), e);
+                inv = AInteger.lowerDigits(AInteger.multiplyMagnitude(inv, AInteger.lowerDigits(twoMinusE, k)), k);
+            }
+            return AInteger.lowerDigits(AInteger.subMagnitude(powerOfBase(n), inv), n);
+        }
+
+        private static int[] powerOfBase(int k) {
+            int[] p = new int[k + 1];
+            p[k] = 1;
+            return p;
+        }
+
+        @Override
+        int[] toInternal(int[] residue) {
+            return redc(AInteger.multiplyMagnitude(residue, r2));
+        }
+
+        @Override
+        int[] fromInternal(int[] x) {
+            return redc(x);
+        }
+
+        @Override
+        int[] multiplyInternal(int[] a, int[] b) {
+            return redc(AInteger.multiplyMagnitude(a, b));
+        }
+
+        // t / R mod m for 0 <= t < m * R, the result is in [0, m)
+        private int[] redc(int[] t) {
+            int[] r;
+            if (mInvFull == null) {
+                // digit by digit: make the lowest digit 0 by adding u * m * B^i, n times
+                int[] m = modulus.value;
+                int[] s = Arrays.copyOf(t, 2 * n + 1);
+                for (int i = 0; i < n; i++) {
+                    long u = s[i] * mInv % AInteger.BASE;
+                    if (u == 0)
+                        continue;
+                    long carry = 0;
+                    for (int j = 0; j < n; j++) {
+                        long cur = s[i + j] + u * m[j] + carry; // < 10^18 + 2 * 10^9
+                        carry = cur / AInteger.BASE;
+                        s[i + j] = (int) (cur - carry * AInteger.BASE);
+                    }
+                    for (int k = i + n; carry != 0; k++) {
+                        long cur = s[k] + carry;
+                        s[k] = (int) (cur % AInteger.BASE);
+                        carry = cur / AInteger.BASE;
+                    }
+                }
+                r = AInteger.trim(Arrays.copyOfRange(s, n, 2 * n + 1), n + 1);
+            } else {
+                // u = (t mod R) * (-m^-1) mod R, then t + u * m is a multiple of R
+                int[] u = AInteger.lowerDigits(AInteger.multiplyMagnitude(AInteger.lowerDigits(t, n), mInvFull), n);
+                r = AInteger.upperDigits(AInteger.addMagnitude(t, AInteger.multiplyMagnitude(u, modulus.value)), n);
+            }
+            return AInteger.compareMagnitude(r, modulus.value) >= 0 ? AInteger.subMagnitude(r, modulus.value) : r;
+        }
+    }
+
+    // Barrett: x mod m = x - floor(x / m) * m where the quotient is estimated with the
+    // precomputed mu = floor(B^2n / m) as ((x / B^(n-1)) * mu) / B^(n+1); that estimate is
+    // at most 2 too small, so at most two subtractions fix it
+    private static final class Barrett extends ModularReducer {
+        private final int[] mu;
+
+        Barrett(AInteger m) {
+            super(m);
+            int[] b2n = new int[2 * n + 1];
+            b2n[2 * n] = 1;
+            mu = AInteger.divideMagnitude(b2n, m.value)[0];
+        }
+
+        @Override
+        public AInteger reduce(AInteger x) {
+            if (x.isNegative || x.value.length > 2 * n)
+                return super.reduce(x);
+            return new AInteger(barrett(x.value), false);
+        }
+
+        @Override
+        int[] toInternal(int[] residue) {
+            return residue;
+        }
+
+        @Override
+        int[] fromInternal(int[] x) {
+            return x;
+        }
+
+        @Override
+        int[] multiplyInternal(int[] a, int[] b) {
+            return barrett(AInteger.multiplyMagnitude(a, b));
+        }
+
+        // x mod m for 0 <= x < B^2n
+        private int[] barrett(int[] x) {
+            if (AInteger.compareMagnitude(x, modulus.value) < 0)
+                return x;
+            int[] q = AInteger.upperDigits(AInteger.multiplyMagnitude(AInteger.upperDigits(x, n - 1), mu), n + 1);
+            int[] r = AInteger.subMagnitude(x, AInteger.multiplyMagnitude(q, modulus.value));
+            while (AInteger.compareMagnitude(r, modulus.value) >= 0)
+                r = AInteger.subMagnitude(r, modulus.value);
+            return r;
+        }
+    }
+}
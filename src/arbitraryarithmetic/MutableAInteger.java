@@ -0,0 +1,258 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+
+// A mutable accumulator for AInteger, meant for loops that add up millions of terms.
+// Every AInteger operation returns a new object with a new digit array, this one works
+// in place on a digit array that only grows (like a StringBuilder for numbers), so a
+// summation loop allocates nothing once the capacity is big enough.
+//
+// Same representation as AInteger: base 10^9 digits, least significant first, but only
+// the first 'size' entries of the array are in use.
+public class MutableAInteger {
+    int[] value; // digits, value[size..] is garbage
+    int size; // digits in use, always >= 1, value[size - 1] != 0 unless the number is 0
+    boolean isNegative;
+    private int[] scratch = new int[0]; // reused by multiplyAdd when the signs differ
+
+    // 0 with room for a few digits
+    public MutableAInteger() {
+        this(4);
+    }
+
+    // 0 with room for capacity digits (about 9 * capacity decimal digits)
+    public MutableAInteger(int capacity) {
+        value = new int[Math.max(1, capacity)];
+        size = 1;
+    }
+
+    // copy of an AInteger
+    public MutableAInteger(AInteger number) {
+        value = Arrays.copyOf(number.value, number.value.length + 1);
+        size = number.value.length;
+        isNegative = number.isNegative;
+    }
+
+    // this = number, reusing the current capacity when it is big enough
+    public MutableAInteger set(AInteger number) {
+        ensureCapacity(number.value.length);
+        System.arraycopy(number.value, 0, value, 0, number.value.length);
+        size = number.value.length;
+        isNegative = number.isNegative;
+        return this;
+    }
+
+    // this = 0, the capacity is kept
+    public MutableAInteger setZero() {
+        value[0] = 0;
+        size = 1;
+        isNegative = false;
+        return this;
+    }
+
+    // immutable copy of the current value
+    public AInteger toAInteger() {
+        return new AInteger(Arrays.copyOf(value, size), isNegative);
+    }
+
+    public boolean isZero() {
+        return size == 1 && value[0] == 0;
+    }
+
+    // number of base 10^9 digits in use, like AInteger.size()
+    public int size() {
+        return size;
+    }
+
+    // number of digits that fit without growing
+    public int capacity() {
+        return value.length;
+    }
+
+    // makes sure digits can hold at least n digits, grows by doubling
+    public void ensureCapacity(int n) {
+        if (value.length < n)
+            value = Arrays.copyOf(value, Math.max(n, 2 * value.length));
+    }
+
+    // this += x
+    public MutableAInteger addTo(AInteger x) {
+        addSigned(x.value, x.value.length, x.isNegative);
+        return this;
+    }
+
+    // this -= x
+    public MutableAInteger subtractFrom(AInteger x) {
+        addSigned(x.value, x.value.length, !x.isNegative);
+        return this;
+    }
+
+    // this += x * k, the product is never built as a separate number when the signs agree
+    public MutableAInteger multiplyAdd(AInteger x, int k) {
+        if (k == 0 || x.isZero())
+            return this;
+        long m = Math.abs((long) k);
+        boolean productNegative = x.isNegative != (k < 0);
+
+        if (productNegative == isNegative || isZero()) {
+            // same sign -> fused this[i] += x[i] * m in place
+            // x[i] * m < 10^9 * 2^31 so together with the carry this stays well inside a long
+            int[] xs = x.value;
+            ensureCapacity(Math.max(size, xs.length) + 2);
+            if (size < xs.length + 2)
+                Arrays.fill(value, size, xs.length + 2, 0);
+            long carry = 0;
+            int i = 0;
+            for (; i < xs.length; i++) {
+                long cur = value[i] + xs[i] * m + carry;
+                value[i] = (int) (cur % AInteger.BASE);
+                carry = cur / AInteger.BASE;
+            }
+            for (; carry != 0; i++) {
+                long cur = (i < size ? value[i] : 0) + carry;
+                value[i] = (int) (cur % AInteger.BASE);
+                carry = cur / AInteger.BASE;
+            }
+            size = Math.max(size, i);
+            isNegative = productNegative;
+            trim();
+        } else {
+            // different signs -> build x * m in the scratch buffer and subtract it
+            int n = x.value.length + 2;
+            if (scratch.length < n)
+                scratch = new int[Math.max(n, 2 * scratch.length)];
+            long carry = 0;
+            for (int i = 0; i < n; i++) {
+                long cur = (i < x.value.length ? x.value[i] * m : 0) + carry;
+                scratch[i] = (int) (cur % AInteger.BASE);
+                carry = cur / AInteger.BASE;
+            }
+            while (n > 1 && scratch[n - 1] == 0)
+                n--;
+            addSigned(scratch, n, productNegative);
+        }
+        return this;
+    }
+
+    // this *= k for a single int k
+    public MutableAInteger multiplyBySmall(int k) {
+        if (k == 0)
+            return setZero();
+        long m = Math.abs((long) k);
+        ensureCapacity(size + 2);
+        long carry = 0;
+        int i = 0;
+        for (; i < size; i++) {
+            long cur = value[i] * m + carry;
+            value[i] = (int) (cur % AInteger.BASE);
+            carry = cur / AInteger.BASE;
+        }
+        for (; carry != 0; i++) {
+            value[i] = (int) (carry % AInteger.BASE);
+            carry /= AInteger.BASE;
+        }
+        size = i;
+        isNegative = isNegative != (k < 0) && !isZero();
+        return this;
+    }
+
+    // this *= B^n (n zero digits at the low end), n >= 0
+    public MutableAInteger shiftLimbs(int n) {
+        if (n == 0 || isZero())
+            return this;
+        ensureCapacity(size + n);
+        System.arraycopy(value, 0, value, n, size);
+        Arrays.fill(value, 0, n, 0);
+        size += n;
+        return this;
+    }
+
+    // this += (negative ? -1 : 1) * |x[0..xLength)|
+    private void addSigned(int[] x, int xLength, boolean negative) {
+        if (negative == isNegative || isZero()) {
+            addMagnitude(x, xLength);
+            isNegative = negative;
+        } else if (compareMagnitude(x, xLength) >= 0) {
+            subtractMagnitude(x, xLength); // |this| >= |x|, sign stays
+        } else {
+            reverseSubtractMagnitude(x, xLength); // |x| > |this|, sign of x wins
+            isNegative = negative;
+        }
+        trim();
+    }
+
+    // |this| += |x|
+    private void addMagnitude(int[] x, int xLength) {
+        int n = Math.max(size, xLength);
+        ensureCapacity(n + 1);
+        int carry = 0;
+        for (int i = 0; i < n; i++) {
+            int sum = (i < size ? value[i] : 0) + (i < xLength ? x[i] : 0) + carry;
+            if (sum >= AInteger.BASE) {
+                value[i] = sum - AInteger.BASE;
+                carry = 1;
+            } else {
+                value[i] = sum;
+                carry = 0;
+            }
+        }
+        value[n] = carry;
+        size = n + 1;
+    }
+
+    // |this| -= |x|, expects |this| >= |x|
+    private void subtractMagnitude(int[] x, int xLength) {
+        int borrow = 0;
+        for (int i = 0; i < size && (i < xLength || borrow != 0); i++) {
+            int diff = value[i] - (i < xLength ? x[i] : 0) - borrow;
+            if (diff < 0) {
+                value[i] = diff + AInteger.BASE;
+                borrow = 1;
+            } else {
+                value[i] = diff;
+                borrow = 0;
+            }
+        }
+    }
+
+    // |this| = |x| - |this|, expects |x| > |this|
+    private void reverseSubtractMagnitude(int[] x, int xLength) {
+        ensureCapacity(xLength);
+        int borrow = 0;
+        for (int i = 0; i < xLength; i++) {
+            int diff = x[i] - (i < size ? value[i] : 0) - borrow;
+            if (diff < 0) {
+                value[i] = diff + AInteger.BASE;
+                borrow = 1;
+            } else {
+                value[i] = diff;
+                borrow = 0;
+            }
+        }
+        size = xLength;
+    }
+
+    // compares |this| with |x[0..xLength)| (x trimmed)
+    private int compareMagnitude(int[] x, int xLength) {
+        if (size != xLength)
+            return size > xLength ? 1 : -1;
+        for (int i = size - 1; i >= 0; i--) {
+            if (value[i] != x[i])
+                return value[i] > x[i] ? 1 : -1;
+        }
+        return 0;
+    }
+
+    // drop leading zero digits and the sign of 0
+    private void trim() {
+        while (size > 1 && value[size - 1] == 0)
+            size--;
+        if (isZero())
+            isNegative = false;
+    }
+
+    @Override
+    public String toString() {
+        return toAInteger().toString();
+    }
+}
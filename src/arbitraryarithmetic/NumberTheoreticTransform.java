@@ -0,0 +1,201 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Multiplication of huge AInteger digit arrays with a number theoretic transform (NTT).
+// The digits (base 10^9) are convolved modulo three NTT friendly primes and the exact
+// coefficients are put back together with the chinese remainder theorem, so unlike a
+// floating point FFT there is no rounding to worry about.
+//
+// A coefficient of the product is at most min(n, m) * (10^9 - 1)^2 and
+// p1 * p2 * p3 is about 7.8 * 10^25, so this is exact for every size the transform
+// supports (up to 2^23 digits in the product, limited by p1).
+//
+// In parallel mode (see Parallelism) the three primes are convolved at the same time and
+// every level of the transform is split into ranges of butterflies.
+final class NumberTheoreticTransform {
+    // p = c * 2^k + 1, all three have 3 as primitive root
+    private static final int P1 = 998_244_353; // 119 * 2^23 + 1
+    private static final int P2 = 167_772_161; // 5 * 2^25 + 1
+    private static final int P3 = 469_762_049; // 7 * 2^26 + 1
+    private static final int G = 3;
+
+    // biggest transform length, every prime has to have a 2^k-th root of unity
+    static final int MAX_LENGTH = 1 << 23;
+
+    // smallest transform that gets its levels split into parallel tasks
+    private static final int MIN_PARALLEL_LENGTH = 1 << 15;
+
+    // constants for the chinese remainder step
+    private static final long P1_INV_MOD_P2 = modPow(P1, P2 - 2, P2);
+    private static final long P1P2_INV_MOD_P3 = modPow((long) P1 * P2 % P3, P3 - 2, P3);
+
+    private NumberTheoreticTransform() {
+    }
+
+    // true if a product with this many digits fits into one transform
+    static boolean fits(int resultLength) {
+        return resultLength <= MAX_LENGTH;
+    }
+
+    // |a| * |b|, a == b squares (one transform less per prime)
+    static int[] multiply(int[] a, int[] b) {
+        boolean square = a == b;
+        int resultLength = a.length + b.length;
+        int n = Integer.highestOneBit(resultLength - 1) << 1;
+
+        int[] r1, r2, r3;
+        if (Parallelism.enabled(n)) {
+            List<int[]> r = Parallelism.invokeAll(List.<Callable<int[]>>of(
+                    () -> convolve(a, b, square, n, P1),
+                    () -> convolve(a, b, square, n, P2),
+                    () -> convolve(a, b, square, n, P3)));
+            r1 = r.get(0);
+            r2 = r.get(1);
+            r3 = r.get(2);
+        } else {
+            r1 = convolve(a, b, square, n, P1);
+            r2 = convolve(a, b, square, n, P2);
+            r3 = convolve(a, b, square, n, P3);
+        }
+
+        // chinese remainder (Garner): x = r1 + p1 * t with t = k2 + p2 * k3 < p2 * p3
+        // x itself doesn't fit in a long, so t is split as tq * 10^9 + tr and x is carried
+        // into base 10^9 as (r1 + p1 * tr + carry) and p1 * tq goes straight into the next carry
+        int[] result = new int[resultLength];
+        long carry = 0;
+        for (int i = 0; i < resultLength; i++) {
+            long x1 = r1[i];
+            long k2 = (r2[i] - x1 % P2 + P2) % P2 * P1_INV_MOD_P2 % P2;
+            long x12ModP3 = (x1 + (long) P1 % P3 * k2) % P3;
+            long k3 = (r3[i] - x12ModP3 + P3) % P3 * P1P2_INV_MOD_P3 % P3;
+            long t = k2 + (long) P2 * k3;
+
+            long tq = t / AInteger.BASE;
+            long tr = t % AInteger.BASE;
+            long low = x1 + P1 * tr + carry;
+            result[i] = (int) (low % AInteger.BASE);
+            carry = low / AInteger.BASE + P1 * tq;
+        }
+
+        return AInteger.trim(result, result.length);
+    }
+
+    // cyclic convolution of a and b modulo p with transform length n
+    private static int[] convolve(int[] a, int[] b, boolean square, int n, int p) {
+        AInteger.checkInterrupted(); // one big transform per prime, a timeout shouldn't wait for all three
+        int[] roots = roots(n, p, false);
+        int[] fa = load(a, n, p);
+        transform(fa, roots, p);
+        if (square) {
+            for (int i = 0; i < n; i++)
+                fa[i] = (int) ((long) fa[i] * fa[i] % p);
+        } else {
+            int[] fb = load(b, n, p);
+            transform(fb, roots, p);
+            for (int i = 0; i < n; i++)
+                fa[i] = (int) ((long) fa[i] * fb[i] % p);
+        }
+
+        transform(fa, roots(n, p, true), p);
+        long nInv = modPow(n, p - 2, p);
+        for (int i = 0; i < n; i++)
+            fa[i] = (int) (fa[i] * nInv % p);
+        return fa;
+    }
+
+    // digits of a reduced mod p, zero padded to length n
+    private static int[] load(int[] a, int n, int p) {
+        int[] f = new int[n];
+        for (int i = 0; i < a.length; i++)
+            f[i] = a[i] >= p ? a[i] - p : a[i]; // every digit is < 10^9 < 2p
+        return f;
+    }
+
+    // w^0 .. w^(n/2 - 1) for a primitive n-th root of unity w (or its inverse)
+    private static int[] roots(int n, int p, boolean inverse) {
+        long w = modPow(G, (p - 1) / n, p);
+        if (inverse)
+            w = modPow(w, p - 2, p);
+        int[] roots = new int[Math.max(1, n / 2)];
+        long cur = 1;
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = (int) cur;
+            cur = cur * w % p;
+        }
+        return roots;
+    }
+
+    // in place iterative Cooley-Tukey transform, roots has to come from roots(n, p, ...)
+    private static void transform(int[] f, int[] roots, int p) {
+        int n = f.length;
+
+        // bit reversal permutation
+        for (int i = 1, j = 0; i < n; i++) {
+            int bit = n >> 1;
+            for (; (j & bit) != 0; bit >>= 1)
+                j ^= bit;
+            j ^= bit;
+            if (i < j) {
+                int t = f[i];
+                f[i] = f[j];
+                f[j] = t;
+            }
+        }
+
+        boolean parallel = Parallelism.enabled(n) && n >= MIN_PARALLEL_LENGTH;
+        for (int len = 2; len <= n; len <<= 1) {
+            AInteger.checkInterrupted(); // a level of a huge transform takes a while
+            if (parallel) {
+                // the n/2 butterflies of one level are independent of each other
+                int level = len;
+                int chunk = Math.max(MIN_PARALLEL_LENGTH / 2, (n / 2 + Parallelism.tasks() - 1) / Parallelism.tasks());
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for (int from = 0; from < n / 2; from += chunk) {
+                    int start = from, end = Math.min(n / 2, from + chunk);
+                    tasks.add(() -> {
+                        butterflies(f, roots, p, level, start, end);
+                        return null;
+                    });
+                }
+                Parallelism.invokeAll(tasks);
+            } else {
+                butterflies(f, roots, p, len, 0, n / 2);
+            }
+        }
+    }
+
+    // butterflies from..to-1 of the level with block length len
+    // (butterfly t works on f[i + j] and f[i + j + len/2] with i = t / (len/2) * len, j = t % (len/2))
+    private static void butterflies(int[] f, int[] roots, int p, int len, int from, int to) {
+        int half = len >> 1;
+        int step = f.length / len; // roots of this level are every step-th root of the full table
+        int t = from;
+        while (t < to) {
+            int j = t % half;
+            int i = t / half * len;
+            int end = Math.min(to, t - j + half);
+            for (; t < end; t++, j++) {
+                int u = f[i + j];
+                int v = (int) ((long) f[i + j + half] * roots[j * step] % p);
+                int sum = u + v; // both < p < 2^30, no overflow
+                f[i + j] = sum >= p ? sum - p : sum;
+                int diff = u - v;
+                f[i + j + half] = diff < 0 ? diff + p : diff;
+            }
+        }
+    }
+
+    private static long modPow(long base, long exp, long mod) {
+        long result = 1;
+        base %= mod;
+        while (exp > 0) {
+            if ((exp & 1) == 1)
+                result = result * base % mod;
+            base = base * base % mod;
+            exp >>= 1;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Parallel mode for the big multiplications (and everything built on them: division, AFloat, ...).
+// Off by default. Parallelism.setLevel(n) with n > 1 makes Karatsuba / Toom-3 run their
+// sub-products, and the NTT its primes and butterflies, as fork/join tasks on a pool of
+// n threads once the operands have at least THRESHOLD digits (base 10^9); below that
+// everything stays sequential because forking would cost more than it saves.
+// The level can also be set with -Darbitraryarithmetic.parallelism=n.
+//
+// A calculation started with runCancellable can be stopped from outside by setting its flag: the
+// flag travels along to every task it forks, and AInteger.checkInterrupted (polled by the big
+// multiplications and divisions) checks it on whatever pool thread the task runs on. Interrupting
+// only the calling thread would leave the forked tasks running.
+public final class Parallelism {
+    // operand size (base 10^9 digits) from which work is split into tasks
+    static final int THRESHOLD = Integer.getInteger("arbitraryarithmetic.parallelThreshold", 2000);
+
+    // cancel flag of the calculation this thread is working for, null if it can't be cancelled
+    private static final ThreadLocal<AtomicBoolean> CANCEL = new ThreadLocal<>();
+
+    private static volatile int level = 1;
+    private static volatile ForkJoinPool pool;
+
+    static {
+        setLevel(Integer.getInteger("arbitraryarithmetic.parallelism", 1));
+    }
+
+    private Parallelism() {
+    }
+
+    // number of threads used for one big operation, 1 means sequential
+    public static synchronized void setLevel(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Parallelism level must be at least 1");
+        ForkJoinPool old = pool;
+        pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        level = threads;
+        if (old != null)
+            old.shutdown(); // running operations still finish on it
+    }
+
+    public static int getLevel() {
+        return level;
+    }
+
+    // true if work on operands of this many digits should be split into tasks
+    static boolean enabled(int size) {
+        return level > 1 && size >= THRESHOLD;
+    }
+
+    // number of tasks worth splitting flat loops (like one NTT level) into
+    static int tasks() {
+        return 4 * level;
+    }
+
+    // Runs task on this thread; once cancel is set, the big operations in it and in every task it
+    // forks stop with a CancellationException
+    public static <T> T runCancellable(AtomicBoolean cancel, Callable<T> task) throws Exception {
+        AtomicBoolean outer = CANCEL.get();
+        CANCEL.set(cancel);
+        try {
+            return task.call();
+        } finally {
+            CANCEL.set(outer);
+        }
+    }
+
+    // true if the calculation running on this thread has been cancelled
+    static boolean cancelled() {
+        AtomicBoolean cancel = CANCEL.get();
+        return cancel != null && cancel.get();
+    }
+
+    // Runs the tasks in parallel and returns their results in order. Called from inside the pool
+    // it forks right there, called from outside it hands the whole batch to the pool and waits.
+    static <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        AtomicBoolean cancel = CANCEL.get();
+        if (cancel != null) { // the tasks may run on other threads, they take the flag along
+            List<Callable<T>> carrying = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks)
+                carrying.add(() -> runCancellable(cancel, task));
+            tasks = carrying;
+        }
+        List<Callable<T>> all = tasks;
+        ForkJoinPool current = pool;
+        if (current == null) { // switched to sequential in the meantime
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Callable<T> task : tasks)
+                results.add(call(task));
+            return results;
+        }
+        if (ForkJoinTask.getPool() != current)
+            return current.invoke(ForkJoinTask.adapt(() -> invokeAll(all)));
+
+        List<ForkJoinTask<T>> forked = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks)
+            forked.add(ForkJoinTask.adapt(task));
+        ForkJoinTask.invokeAll(forked);
+        List<T> results = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<T> task : forked)
+            results.add(task.join());
+        return results;
+    }
+
+    private static <T> T call(Callable<T> task) {
+        try {
+            return task.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
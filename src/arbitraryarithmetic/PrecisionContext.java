@@ -0,0 +1,90 @@
+package arbitraryarithmetic;
+
+import java.math.RoundingMode;
+
+// How many significant digits an AFloat operation should keep and how to round the rest.
+// AFloat.add/subtract/multiply/divide all have an overload that takes one of these:
+//   new AFloat("2").divide(new AFloat("3"), new PrecisionContext(50)) -> 0.666…67 (50 digits)
+// Rounding to the context after every step keeps the operands of long running
+// calculations at a fixed size instead of growing with every multiply.
+//
+// precision 0 means unlimited: add/subtract/multiply are exact and divide falls back to the
+// project rule of at least 30 truncated fractional digits (what the plain methods do).
+public final class PrecisionContext {
+    // the behaviour of the methods without a context
+    public static final PrecisionContext UNLIMITED = new PrecisionContext(0, RoundingMode.DOWN);
+
+    private final int precision; // significant decimal digits, 0 -> unlimited
+    private final RoundingMode roundingMode;
+
+    // precision significant digits, rounded half-even
+    public PrecisionContext(int precision) {
+        this(precision, RoundingMode.HALF_EVEN);
+    }
+
+    public PrecisionContext(int precision, RoundingMode roundingMode) {
+        if (precision < 0)
+            throw new IllegalArgumentException("Negative precision");
+        if (roundingMode == null)
+            throw new NullPointerException("roundingMode");
+        this.precision = precision;
+        this.roundingMode = roundingMode;
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    public RoundingMode getRoundingMode() {
+        return roundingMode;
+    }
+
+    public boolean isUnlimited() {
+        return precision == 0;
+    }
+
+    // Decides if a number whose kept digits end in lastDigit has to be rounded away from zero,
+    // given the first dropped digit and whether anything after it is non-zero
+    boolean roundsUp(boolean negative, int lastDigit, int firstDropped, boolean restNonZero) {
+        boolean inexact = firstDropped != 0 || restNonZero;
+        switch (roundingMode) {
+            case UP:
+                return inexact;
+            case DOWN:
+                return false;
+            case CEILING:
+                return inexact && !negative;
+            case FLOOR:
+                return inexact && negative;
+            case HALF_UP:
+                return firstDropped >= 5;
+            case HALF_DOWN:
+                return firstDropped > 5 || (firstDropped == 5 && restNonZero);
+            case HALF_EVEN:
+                return firstDropped > 5 || (firstDropped == 5 && (restNonZero || (lastDigit & 1) == 1));
+            case UNNECESSARY:
+            default:
+                if (inexact)
+                    throw new ArithmeticException("Rounding necessary");
+                return false;
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof PrecisionContext))
+            return false;
+        PrecisionContext other = (PrecisionContext) o;
+        return precision == other.precision && roundingMode == other.roundingMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * precision + roundingMode.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "precision=" + precision + " roundingMode=" + roundingMode;
+    }
+}
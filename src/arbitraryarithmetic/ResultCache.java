@@ -0,0 +1,167 @@
+package arbitraryarithmetic;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+// Optional memo cache for results that are expensive to compute: big divisions
+// (AInteger.divide / divideAndRemainder, and so AFloat.divide), AInteger.pow and parsing long
+// number strings. A workload that repeats the same big calculation then pays for hashing and
+// comparing the operands (linear) instead of the division itself (M(n) log n).
+//
+// Off by default. ResultCache.setCapacity(bytes), -Darbitraryarithmetic.resultCache=<MB> or
+// MyInfArith --cache <MB> turns it on. The least recently used results are dropped when the
+// cached numbers (operands and results, about 4 bytes per base 10^9 digit) would take more
+// than the capacity. Operands with fewer than MIN_DIGITS digits are never cached, for them
+// a lookup would cost about as much as the calculation.
+//
+// Batch and server workers use it from many threads at once, so it is split into SEGMENTS
+// independently locked LRU maps (picked by the key's hash), each with its share of the capacity
+// and its own byte count. Keys are built, and their operands hashed (linear in the digits, the
+// first time), before any lock is taken; under a lock there is only the map lookup, and equals
+// only compares digits when the hashes match.
+//
+// Keys hold on to the operands, which is fine because AIntegers / AFloats never change.
+public final class ResultCache {
+    // smallest operand (base 10^9 digits) whose results are cached
+    static final int MIN_DIGITS = Integer.getInteger("arbitraryarithmetic.resultCacheMinDigits", 32);
+
+    enum Kind {
+        DIVIDE, POW, PARSE_INTEGER, PARSE_FLOAT
+    }
+
+    // a power of two; one result can take at most capacity / SEGMENTS bytes
+    private static final int SEGMENTS = 16;
+
+    private static volatile long capacity = Long.getLong("arbitraryarithmetic.resultCache", 0) << 20;
+    private static final Segment[] SEGMENT = new Segment[SEGMENTS];
+    private static final LongAdder hits = new LongAdder(), misses = new LongAdder();
+
+    static {
+        for (int i = 0; i < SEGMENTS; i++)
+            SEGMENT[i] = new Segment();
+    }
+
+    private ResultCache() {
+    }
+
+    // maximum bytes of cached numbers, 0 turns the cache off (and empties it)
+    public static void setCapacity(long bytes) {
+        if (bytes < 0)
+            throw new IllegalArgumentException("Negative capacity");
+        capacity = bytes;
+        for (Segment segment : SEGMENT)
+            segment.evict(bytes / SEGMENTS);
+    }
+
+    public static long getCapacity() {
+        return capacity;
+    }
+
+    public static void clear() {
+        for (Segment segment : SEGMENT)
+            segment.clear();
+    }
+
+    public static long hits() {
+        return hits.sum();
+    }
+
+    public static long misses() {
+        return misses.sum();
+    }
+
+    // true if a calculation on operands of this many digits should go through the cache
+    static boolean applies(long digits) {
+        return capacity > 0 && digits >= MIN_DIGITS;
+    }
+
+    // the stored result or null
+    static Object get(Kind kind, Object a, Object b) {
+        Key key = new Key(kind, a, b);
+        Object result = segment(key).get(key);
+        (result == null ? misses : hits).increment();
+        return result;
+    }
+
+    // stores a result, bytes is roughly what operands and result take together
+    static void put(Kind kind, Object a, Object b, Object result, long bytes) {
+        long limit = capacity / SEGMENTS;
+        if (bytes > limit)
+            return; // would push out everything else
+        Key key = new Key(kind, a, b);
+        segment(key).put(key, new Entry(result, bytes), limit);
+    }
+
+    private static Segment segment(Key key) {
+        int h = key.hash;
+        return SEGMENT[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    // one LRU map with its own lock and byte count
+    private static final class Segment {
+        // access order, the eldest entry is the least recently used one
+        private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+        private long used; // bytes of everything in map
+
+        synchronized Object get(Key key) {
+            Entry e = map.get(key);
+            return e == null ? null : e.result;
+        }
+
+        synchronized void put(Key key, Entry entry, long limit) {
+            Entry old = map.put(key, entry);
+            used += entry.bytes - (old == null ? 0 : old.bytes);
+            evict(limit);
+        }
+
+        synchronized void evict(long limit) {
+            Iterator<Entry> eldest = map.values().iterator();
+            while (used > limit && eldest.hasNext()) {
+                used -= eldest.next().bytes;
+                eldest.remove();
+            }
+        }
+
+        synchronized void clear() {
+            map.clear();
+            used = 0;
+        }
+    }
+
+    private static final class Key {
+        final Kind kind;
+        final Object a, b;
+        final int hash;
+
+        // hashes the operands right away, so that happens outside the segment lock
+        Key(Kind kind, Object a, Object b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+            this.hash = (kind.hashCode() * 31 + a.hashCode()) * 31 + Objects.hashCode(b);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return hash == k.hash && kind == k.kind && a.equals(k.a) && Objects.equals(b, k.b);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        final Object result;
+        final long bytes;
+
+        Entry(Object result, long bytes) {
+            this.result = result;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package arbitraryarithmetic;
+
+import jdk.incubator.vector.*;
+
+// SIMD versions of the school loops in AInteger (addMagnitude, subMagnitude, multiplyBasecase)
+// on the Vector API. The scalar loops carry from one digit to the next, so every digit has to
+// wait for the one before it; here the carries are kept apart and settled afterwards:
+//
+// add / subtract: a vector of digits is added in one go, each lane takes the carry that the
+// digit below it generates on its own (a[i-1] + b[i-1] >= BASE, both loaded shifted by one).
+// That is only wrong when a digit was 999999999 and a carry came in, which leaves BASE in the
+// lane; this is rare, so a scalar pass to propagate those carries only runs if it happened.
+//
+// multiply: ROWS rows a[i] * b are accumulated into longs without any carrying, the products
+// are just lanewise multiply-adds, and then one scalar pass brings those columns back below
+// BASE. That is one division per column per ROWS rows instead of one per product.
+//
+// jdk.incubator.vector is not in the default module graph, it needs
+//   java --add-modules jdk.incubator.vector ...
+// (javac too, build.xml passes it). Without it this class can't be loaded and AInteger keeps
+// using its scalar loops, see AInteger.VECTOR.
+final class VectorKernels {
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+    private static final int BASE = AInteger.BASE;
+
+    // rows added up before the carries are settled: a column then holds at most
+    // ROWS * (10^9 - 1)^2 plus a carry below 10^11, which is still below 2^63
+    private static final int ROWS = 8;
+
+    private VectorKernels() {
+    }
+
+    // false where the preferred vectors are too short to gain anything
+    static boolean usable() {
+        return INTS.length() >= 4 && LONGS.length() >= 2;
+    }
+
+    // |a| + |b|, a the longer one and b at least 2 digits
+    static int[] add(int[] a, int[] b) {
+        int m = b.length;
+        int[] result = new int[a.length + 1];
+        int sum = a[0] + b[0];
+        result[0] = sum >= BASE ? sum - BASE : sum;
+
+        // result[i] = (a[i] + b[i]) mod BASE + carry generated by digit i - 1, so at most BASE
+        VectorMask<Integer> overflow = INTS.maskAll(false);
+        int i = 1;
+        for (int upper = 1 + INTS.loopBound(m - 1); i < upper; i += INTS.length()) {
+            IntVector s = IntVector.fromArray(INTS, a, i).add(IntVector.fromArray(INTS, b, i));
+            IntVector below = IntVector.fromArray(INTS, a, i - 1).add(IntVector.fromArray(INTS, b, i - 1));
+            s = s.sub(BASE, s.compare(VectorOperators.GE, BASE)).add(1, below.compare(VectorOperators.GE, BASE));
+            overflow = overflow.or(s.compare(VectorOperators.EQ, BASE));
+            s.intoArray(result, i);
+        }
+        boolean ripple = overflow.anyTrue();
+        for (; i < m; i++) {
+            int s = a[i] + b[i];
+            s = (s >= BASE ? s - BASE : s) + (a[i - 1] + b[i - 1] >= BASE ? 1 : 0);
+            ripple |= s == BASE;
+            result[i] = s;
+        }
+        int carry = a[m - 1] + b[m - 1] >= BASE ? 1 : 0;
+        if (m < a.length) { // the rest of a, only its lowest digit gets a carry
+            result[m] = a[m] + carry;
+            ripple |= result[m] == BASE;
+            System.arraycopy(a, m + 1, result, m + 1, a.length - m - 1);
+        } else {
+            result[m] = carry;
+        }
+
+        if (ripple) {
+            carry = 0;
+            for (int k = 0; k < result.length; k++) {
+                int s = result[k] + carry;
+                carry = s >= BASE ? 1 : 0;
+                result[k] = s - carry * BASE;
+            }
+        }
+        return AInteger.trim(result, result.length);
+    }
+
+    // |a| - |b|, expects |a| >= |b| and b at least 2 digits
+    static int[] subtract(int[] a, int[] b) {
+        int m = b.length;
+        int[] result = new int[a.length];
+        int diff = a[0] - b[0];
+        result[0] = diff < 0 ? diff + BASE : diff;
+
+        // result[i] = (a[i] - b[i]) mod BASE - borrow generated by digit i - 1, so at least -1
+        VectorMask<Integer> underflow = INTS.maskAll(false);
+        int i = 1;
+        for (int upper = 1 + INTS.loopBound(m - 1); i < upper; i += INTS.length()) {
+            IntVector d = IntVector.fromArray(INTS, a, i).sub(IntVector.fromArray(INTS, b, i));
+            IntVector below = IntVector.fromArray(INTS, a, i - 1).sub(IntVector.fromArray(INTS, b, i - 1));
+            d = d.add(BASE, d.compare(VectorOperators.LT, 0)).sub(1, below.compare(VectorOperators.LT, 0));
+            underflow = underflow.or(d.compare(VectorOperators.LT, 0));
+            d.intoArray(result, i);
+        }
+        boolean ripple = underflow.anyTrue();
+        for (; i < m; i++) {
+            int d = a[i] - b[i];
+            d = (d < 0 ? d + BASE : d) - (a[i - 1] < b[i - 1] ? 1 : 0);
+            ripple |= d < 0;
+            result[i] = d;
+        }
+        int borrow = a[m - 1] < b[m - 1] ? 1 : 0;
+        if (m < a.length) {
+            result[m] = a[m] - borrow;
+            ripple |= result[m] < 0;
+            System.arraycopy(a, m + 1, result, m + 1, a.length - m - 1);
+        }
+
+        if (ripple) {
+            borrow = 0;
+            for (int k = 0; k < result.length; k++) {
+                int d = result[k] - borrow;
+                borrow = d < 0 ? 1 : 0;
+                result[k] = d + borrow * BASE;
+            }
+        }
+        return AInteger.trim(result, result.length);
+    }
+
+    // |a| * |b| the school way, rows of the shorter number times the longer one
+    static int[] multiply(int[] a, int[] b) {
+        if (a.length > b.length) { // the longer one goes along the vectors
+            int[] t = a;
+            a = b;
+            b = t;
+        }
+        int n = a.length, m = b.length;
+        long[] wide = new long[m];
+        for (int j = 0; j < m; j++)
+            wide[j] = b[j];
+        long[] columns = new long[n + m];
+        int upper = LONGS.loopBound(m);
+
+        for (int i = 0; i < n; i += ROWS) {
+            int end = Math.min(n, i + ROWS);
+            for (int r = i; r < end; r++) {
+                long ar = a[r];
+                if (ar == 0)
+                    continue;
+                int j = 0;
+                for (; j < upper; j += LONGS.length()) {
+                    LongVector.fromArray(LONGS, wide, j).mul(ar).add(LongVector.fromArray(LONGS, columns, r + j))
+                            .intoArray(columns, r + j);
+                }
+                for (; j < m; j++)
+                    columns[r + j] += ar * wide[j];
+            }
+            // settle the carries of these rows, what is left over goes to the first column they didn't touch
+            long carry = 0;
+            int top = end + m - 1;
+            for (int k = i; k < top; k++) {
+                long v = columns[k] + carry;
+                carry = v / BASE;
+                columns[k] = v - carry * BASE;
+            }
+            columns[top] += carry;
+        }
+
+        int[] result = new int[n + m];
+        for (int k = 0; k < result.length; k++)
+            result[k] = (int) columns[k];
+        return AInteger.trim(result, result.length);
+    }
+}